@@ -0,0 +1,324 @@
+//A thread-safe RedBlackTree. Writers (insert, delete and their rotations) are serialized by a StampedLock;
+//readers first walk the tree without locking under an optimistic stamp and only fall back to a read lock
+//when a writer got in the way. Read-mostly workloads therefore scale with the number of reader threads.
+
+import java.util.BitSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+
+public class ConcurrentRedBlackTree {
+
+  // An optimistic walk that takes more steps than any valid tree of int keys could need has raced with a
+  // writer (a red-black tree holding 2^32 keys is at most 64 levels deep)
+  private static final int MAX_DEPTH = 64;
+  // Optimistic attempts before a reader gives up and takes the read lock
+  private static final int OPTIMISTIC_ATTEMPTS = 2;
+  // Result of an optimistic walk that could not finish
+  private static final int TORN = -1;
+
+  private final RedBlackTree tree;
+  private final StampedLock lock = new StampedLock();
+
+  public ConcurrentRedBlackTree() {
+    this(new RedBlackTree());
+  }
+
+  //precondition: no other code keeps using tree directly
+  public ConcurrentRedBlackTree(RedBlackTree tree) {
+    this.tree = tree;
+  }
+
+  // -- Writers ------------------------------------------------------------------------------------
+
+  public void insert(int key) {
+    long stamp = lock.writeLock();
+    try {
+      tree.insert(key);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public void delete(int key) {
+    long stamp = lock.writeLock();
+    try {
+      tree.delete(key);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  //postcondition: see RedBlackTree.insertAll; the whole batch is applied under one write lock
+  public BitSet insertAll(int[] keys) {
+    long stamp = lock.writeLock();
+    try {
+      return tree.insertAll(keys);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  //postcondition: see RedBlackTree.deleteAll; the whole batch is applied under one write lock
+  public BitSet deleteAll(int[] keys) {
+    long stamp = lock.writeLock();
+    try {
+      return tree.deleteAll(keys);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  // -- Readers ------------------------------------------------------------------------------------
+
+  public boolean search(int key) {
+    for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        break;
+      }
+      int found = probe(key);
+      if (found != TORN && lock.validate(stamp)) {
+        return found == 1;
+      }
+    }
+
+    long stamp = lock.readLock();
+    try {
+      return tree.search(key) != null;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: see RedBlackTree.containsAll; the whole batch is looked up under one read lock
+  public boolean containsAll(int[] keys, BitSet found) {
+    long stamp = lock.readLock();
+    try {
+      return tree.containsAll(keys, found);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public int size() {
+    for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        break;
+      }
+      Node root = tree.root();
+      int size = root == null ? 0 : root.size;
+      if (lock.validate(stamp)) {
+        return size;
+      }
+    }
+
+    long stamp = lock.readLock();
+    try {
+      return tree.size();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: number of keys k with lo <= k <= hi, in O(log n)
+  public int countInRange(int lo, int hi) {
+    if (lo > hi) {
+      return 0;
+    }
+    for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        break;
+      }
+      int atMostHi = countBelow(hi, true);
+      int belowLo = countBelow(lo, false);
+      if (atMostHi != TORN && belowLo != TORN && lock.validate(stamp)) {
+        return atMostHi - belowLo;
+      }
+    }
+
+    long stamp = lock.readLock();
+    try {
+      return tree.countInRange(lo, hi);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: action has been called, in ascending order, with every key k where lo <= k <= hi (once per
+  //occurrence in a multiset, as in RedBlackTree.forEachInRange), as of one consistent point in time. The keys are
+  //gathered first, so action never runs while the tree is being read.
+  public void forEachInRange(int lo, int hi, IntConsumer action) {
+    int[] keys = null;
+    int count = TORN;
+    for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS && count == TORN; attempt++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        break;
+      }
+      // The size as of the stamp bounds both the walk and any count worth trusting
+      Node root = tree.root();
+      int size = root == null ? 0 : root.size;
+      keys = keys == null ? new int[16] : keys;
+      count = collectRange(lo, hi, keys, size);
+      // Only a validated count is used to size the buffer, so a torn walk can't make us allocate whatever it reported
+      if (!lock.validate(stamp) || count < 0 || count > size) {
+        count = TORN;
+        continue;
+      }
+      if (count > keys.length) {
+        // Buffer was too small: retry with the size the walk reported
+        keys = new int[count];
+        count = collectRange(lo, hi, keys, size);
+        if (count < 0 || count > keys.length || !lock.validate(stamp)) {
+          count = TORN;
+        }
+      }
+    }
+
+    if (count == TORN) {
+      long stamp = lock.readLock();
+      try {
+        keys = new int[tree.countInRange(lo, hi)];
+        count = 0;
+        RedBlackTree.Cursor cursor = tree.cursor();
+        for (boolean more = cursor.seekCeiling(lo); more && count < keys.length; more = cursor.next()) {
+          for (int i = cursor.count(); i > 0; i--) {
+            keys[count++] = cursor.key();
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    for (int i = 0; i < count; i++) {
+      action.accept(keys[i]);
+    }
+  }
+
+  //postcondition: number of nodes on the longest root-to-leaf path
+  public int height() {
+    long stamp = lock.readLock();
+    try {
+      return tree.height();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  // -- Optimistic walks ---------------------------------------------------------------------------
+  // These read nodes while a writer may be changing them, so they never trust what they see: every loop is
+  // bounded and the caller discards the result unless the stamp still validates afterwards.
+
+  // 1 if found, 0 if not, TORN if the walk ran too long
+  private int probe(int key) {
+    Node node = tree.root();
+    for (int steps = 0; node != null; steps++) {
+      if (steps > MAX_DEPTH) {
+        return TORN;
+      }
+      int nodeKey = node.key;
+      if (key == nodeKey) {
+        return 1;
+      }
+      node = key < nodeKey ? node.left : node.right;
+    }
+    return 0;
+  }
+
+  // Number of keys < key (or <= key if inclusive), or TORN
+  private int countBelow(int key, boolean inclusive) {
+    int count = 0;
+    Node node = tree.root();
+    for (int steps = 0; node != null; steps++) {
+      if (steps > MAX_DEPTH) {
+        return TORN;
+      }
+      if (key < node.key || (!inclusive && key == node.key)) {
+        node = node.left;
+      } else {
+        Node left = node.left;
+        count += (left == null ? 0 : left.size) + node.count;
+        node = node.right;
+      }
+    }
+    return count;
+  }
+
+  // Copies the keys in [lo, hi] into buffer, once per occurrence, and returns how many there are (which may exceed
+  // the buffer, in which case only the first buffer.length are copied), or TORN. size is the size of the tree when
+  // the stamp was taken.
+  // Every link is read into a local once and only that local is tested and followed, since a writer may clear the
+  // field in between. A torn walk can't loop: keys must strictly increase, and the steps are capped by what an
+  // in-order walk over size nodes could need.
+  private int collectRange(int lo, int hi, int[] buffer, int size) {
+    // Descend to the ceiling of lo
+    Node node = tree.root();
+    Node ceiling = null;
+    for (int steps = 0; node != null; steps++) {
+      if (steps > MAX_DEPTH) {
+        return TORN;
+      }
+      if (lo <= node.key) {
+        ceiling = node;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+
+    // Successor walk; an in-order walk follows every link of the tree at most twice, plus the climb from the ceiling
+    long maxSteps = 2L * size + 2 * MAX_DEPTH;
+    long steps = 0;
+    int count = 0;
+    boolean first = true;
+    int previousKey = 0;
+    node = ceiling;
+    while (node != null) {
+      int key = node.key;
+      if (key > hi) {
+        break;
+      }
+      if (!first && key <= previousKey) {
+        return TORN;
+      }
+      first = false;
+      previousKey = key;
+      int occurrences = node.count;
+      for (int i = count; i < buffer.length && i < count + occurrences; i++) {
+        buffer[i] = key;
+      }
+      count += occurrences;
+      if (count < 0 || count > size) {
+        return TORN;
+      }
+
+      Node right = node.right;
+      if (right != null) {
+        node = right;
+        for (Node left = node.left; left != null; left = node.left) {
+          node = left;
+          if (++steps > maxSteps) {
+            return TORN;
+          }
+        }
+      } else {
+        Node parent = node.parent;
+        while (parent != null && node == parent.right) {
+          node = parent;
+          parent = node.parent;
+          if (++steps > maxSteps) {
+            return TORN;
+          }
+        }
+        node = parent;
+      }
+      if (++steps > maxSteps) {
+        return TORN;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,310 @@
+//A RedBlackTree that survives a crash. Every insert and delete is also appended to a write-ahead log in the tree's
+//directory, and opening the directory loads the last snapshot and replays the log on top of it.
+//Log writes are group-committed: records collect in memory and reach the disk with a single fsync once the batch
+//holds syncBytes bytes or is syncWindowMillis old, whichever comes first. A crash loses at most that one batch;
+//sync() makes everything so far durable right away. compact() folds the log into a new snapshot.
+//
+//Log layout: magic "RBTL" (4 bytes), then one frame per fsync: payload length (4 bytes) | CRC32 of the payload
+//(4 bytes) | records of 5 bytes (1 = insert or 2 = delete, then the key). Replay stops at the first frame that is
+//incomplete or fails its checksum, i.e. at the batch a crash interrupted, and cuts the log off there.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+public class DurableRedBlackTree implements AutoCloseable {
+
+  static final String SNAPSHOT_FILE = "tree.snapshot";
+  static final String LOG_FILE = "tree.log";
+
+  private static final int LOG_MAGIC = 0x5242544C;
+  private static final int LOG_HEADER_BYTES = 4;
+  private static final int FRAME_HEADER_BYTES = 8;
+  private static final int RECORD_BYTES = 5;
+  private static final byte INSERT = 1;
+  private static final byte DELETE = 2;
+
+  private final RedBlackTree tree;
+  private final Path directory;
+  private final FileChannel log;
+  // Records not written yet, behind room for their frame header
+  private final ByteBuffer pending;
+  private final int syncBytes;
+  // Syncs batches that reach their time limit; null if every mutation is synced on its own
+  private final ScheduledExecutorService flusher;
+  // A failed log write; once it is set every later call fails with it, since the tree may be ahead of the disk
+  private IOException failure;
+  private boolean closed;
+
+  private DurableRedBlackTree(RedBlackTree tree, Path directory, FileChannel log, long syncWindowMillis,
+      int syncBytes) {
+    this.tree = tree;
+    this.directory = directory;
+    this.log = log;
+    this.syncBytes = syncBytes;
+    this.pending = ByteBuffer.allocateDirect(FRAME_HEADER_BYTES + syncBytes + RECORD_BYTES);
+    this.pending.position(FRAME_HEADER_BYTES);
+    if (syncWindowMillis > 0) {
+      flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DurableRedBlackTree log sync");
+        thread.setDaemon(true);
+        return thread;
+      });
+      flusher.scheduleWithFixedDelay(this::syncInBackground, syncWindowMillis, syncWindowMillis,
+          TimeUnit.MILLISECONDS);
+    } else {
+      flusher = null;
+    }
+  }
+
+  //precondition: syncWindowMillis >= 0 and syncBytes >= 1
+  //postcondition: the tree stored in directory (empty if there is none yet), with the log replayed. With a
+  //syncWindowMillis of 0 every insert and delete is synced before it returns.
+  public static DurableRedBlackTree open(Path directory, long syncWindowMillis, int syncBytes) throws IOException {
+    if (syncWindowMillis < 0) {
+      throw new IllegalArgumentException("syncWindowMillis must not be negative, but is " + syncWindowMillis);
+    }
+    if (syncBytes < 1) {
+      throw new IllegalArgumentException("syncBytes must be positive, but is " + syncBytes);
+    }
+    Files.createDirectories(directory);
+    Path snapshot = directory.resolve(SNAPSHOT_FILE);
+    RedBlackTree tree = Files.exists(snapshot) ? RedBlackTree.load(snapshot) : new RedBlackTree();
+
+    FileChannel log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end;
+      if (log.size() < LOG_HEADER_BYTES) {
+        end = startLog(log);
+        // The log may have just been created; make sure its directory entry is on disk too
+        TreeSnapshot.syncDirectory(directory);
+      } else {
+        end = replay(log, tree, directory);
+      }
+      log.position(end);
+    } catch (IOException | RuntimeException e) {
+      log.close();
+      throw e;
+    }
+    return new DurableRedBlackTree(tree, directory, log, syncWindowMillis, syncBytes);
+  }
+
+  // -- Mutations ----------------------------------------------------------------------------------
+
+  //postcondition: see RedBlackTree.insert; the insert is logged and durable after the next sync. If logging it
+  //fails, the tree is left unchanged.
+  public synchronized void insert(int key) throws IOException {
+    ensureUsable();
+    append(INSERT, key);
+    tree.insert(key);
+  }
+
+  //postcondition: see RedBlackTree.delete; a delete that removed a key is logged and durable after the next sync
+  public synchronized void delete(int key) throws IOException {
+    ensureUsable();
+    if (tree.search(key) == null) {
+      return;
+    }
+    append(DELETE, key);
+    tree.delete(key);
+  }
+
+  //postcondition: every mutation so far is on disk
+  public synchronized void sync() throws IOException {
+    ensureUsable();
+    writePending();
+  }
+
+  //postcondition: the tree is saved as the new snapshot and the log is empty. The snapshot's rename is synced
+  //(directory included) before the log is truncated, so a crash in between leaves the new snapshot next to the old
+  //log, which is harmless: replaying a log over a snapshot that already contains its changes yields the same keys.
+  public synchronized void compact() throws IOException {
+    ensureUsable();
+    writePending();
+    tree.save(directory.resolve(SNAPSHOT_FILE), false);
+    log.truncate(LOG_HEADER_BYTES);
+    log.force(true);
+    log.position(LOG_HEADER_BYTES);
+  }
+
+  //postcondition: every mutation is on disk and the log is closed
+  //throws IOException if writing the log failed, now or earlier; the log is closed anyway
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+    try {
+      if (failure == null) {
+        writePending();
+      }
+    } finally {
+      closed = true;
+      log.close();
+    }
+    if (failure != null) {
+      throw earlierFailure();
+    }
+  }
+
+  // Drops the unsynced batch and closes the log without writing anything more, like a process that dies.
+  // For crash tests: reopening the directory shows what a real crash at this point would have left.
+  synchronized void crash() throws IOException {
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+    closed = true;
+    pending.clear().position(FRAME_HEADER_BYTES);
+    log.close();
+  }
+
+  // Closes the log under the tree, so the next write to it fails like one to a disk that has gone away.
+  // For crash tests of what the tree does after a failed write.
+  synchronized void loseLog() throws IOException {
+    log.close();
+  }
+
+  // -- Reading ------------------------------------------------------------------------------------
+
+  public synchronized boolean search(int key) {
+    return tree.search(key) != null;
+  }
+
+  public synchronized int size() {
+    return tree.size();
+  }
+
+  //postcondition: action has been called with every key in ascending order
+  public synchronized void forEach(IntConsumer action) {
+    tree.forEach(action);
+  }
+
+  // -- Log ----------------------------------------------------------------------------------------
+
+  private void append(byte operation, int key) throws IOException {
+    pending.put(operation).putInt(key);
+    if (flusher == null || pending.position() - FRAME_HEADER_BYTES >= syncBytes) {
+      writePending();
+    }
+  }
+
+  // Writes the pending records as one frame and syncs them; a no-op if there are none.
+  // If that fails, some of the frame may be on disk and some not, so the batch is dropped and the failure recorded,
+  // which makes every later call fail too.
+  private void writePending() throws IOException {
+    int payload = pending.position() - FRAME_HEADER_BYTES;
+    if (payload == 0) {
+      return;
+    }
+    try {
+      pending.flip();
+      CRC32 checksum = new CRC32();
+      checksum.update(pending.duplicate().position(FRAME_HEADER_BYTES));
+      pending.putInt(0, payload).putInt(4, (int) checksum.getValue());
+      while (pending.hasRemaining()) {
+        log.write(pending);
+      }
+      log.force(false);
+    } catch (IOException e) {
+      failure = e;
+      throw e;
+    } finally {
+      pending.clear().position(FRAME_HEADER_BYTES);
+    }
+  }
+
+  private synchronized void syncInBackground() {
+    if (closed || failure != null) {
+      return;
+    }
+    try {
+      writePending();
+    } catch (IOException e) {
+      // Recorded in failure; the next call reports it
+    }
+  }
+
+  private void ensureUsable() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("Tree has been closed");
+    }
+    if (failure != null) {
+      throw earlierFailure();
+    }
+  }
+
+  private IOException earlierFailure() {
+    return new IOException("Writing the log failed earlier; the tree may be ahead of the disk", failure);
+  }
+
+  // Writes the header of an empty log; returns where the first frame goes
+  private static long startLog(FileChannel log) throws IOException {
+    log.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).flip();
+    while (header.hasRemaining()) {
+      log.write(header, header.position());
+    }
+    log.force(true);
+    return LOG_HEADER_BYTES;
+  }
+
+  // Applies every intact frame to tree and cuts off whatever follows them; returns the new end of the log.
+  // Inserting a present key and deleting a missing one are skipped, so replaying over a newer snapshot is safe.
+  private static long replay(FileChannel log, RedBlackTree tree, Path directory) throws IOException {
+    long length = log.size();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Log in " + directory + " is too large to replay (" + length + " bytes)");
+    }
+    MappedByteBuffer mapped = log.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    int end;
+    try {
+      if (mapped.getInt(0) != LOG_MAGIC) {
+        throw new IOException(directory.resolve(LOG_FILE) + " is not a tree log");
+      }
+      end = LOG_HEADER_BYTES;
+      CRC32 checksum = new CRC32();
+      while (end + FRAME_HEADER_BYTES <= length) {
+        int payload = mapped.getInt(end);
+        if (payload <= 0 || payload % RECORD_BYTES != 0 || payload > length - end - FRAME_HEADER_BYTES) {
+          break;
+        }
+        int start = end + FRAME_HEADER_BYTES;
+        checksum.reset();
+        checksum.update(mapped.duplicate().limit(start + payload).position(start));
+        if ((int) checksum.getValue() != mapped.getInt(end + 4)) {
+          break;
+        }
+        for (int record = start; record < start + payload; record += RECORD_BYTES) {
+          int key = mapped.getInt(record + 1);
+          boolean present = tree.search(key) != null;
+          if (mapped.get(record) == INSERT && !present) {
+            tree.insert(key);
+          } else if (mapped.get(record) == DELETE && present) {
+            tree.delete(key);
+          }
+        }
+        end = start + payload;
+      }
+    } finally {
+      OffHeapRedBlackTree.freeBuffer(mapped);
+    }
+    if (end < length) {
+      log.truncate(end);
+      log.force(true);
+    }
+    return end;
+  }
+}
@@ -0,0 +1,209 @@
+//An immutable, read-only index of the keys of a RedBlackTree (see RedBlackTree.freeze).
+//The keys sit in one int[] in Eytzinger order: the root at index 1 and the children of index k at 2k and 2k + 1,
+//i.e. a complete binary search tree stored level by level. A lookup touches one int per level instead of one Node,
+//the top levels share a handful of cache lines that stay hot, and there are no pointers to chase: the next index is
+//computed from the comparison, which the JIT turns into a conditional move rather than a branch it can mispredict.
+//Updates are batched: refreeze applies a batch of inserts and deletes and returns a new index in linear time.
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public final class FrozenRedBlackTree {
+
+  //Returned by floor and ceiling when there is no such key (the same value as RedBlackTree's)
+  public static final long NOT_FOUND = RedBlackTree.NOT_FOUND;
+
+  // The largest index a lookup computes is 2 * size + 1, which has to fit in an int
+  static final int MAX_SIZE = (1 << 30) - 1;
+
+  private static final FrozenRedBlackTree EMPTY = new FrozenRedBlackTree(new int[1], 0);
+
+  // keys[0] is unused, keys[1..size] hold the keys in Eytzinger order
+  private final int[] keys;
+  private final int size;
+
+  private FrozenRedBlackTree(int[] keys, int size) {
+    this.keys = keys;
+    this.size = size;
+  }
+
+  //precondition: the first count entries of sorted are in strictly increasing order
+  //postcondition: an index of exactly these keys, built in O(n)
+  static FrozenRedBlackTree ofSorted(int[] sorted, int count) {
+    if (count > MAX_SIZE) {
+      throw new IllegalArgumentException("A frozen tree holds at most " + MAX_SIZE + " keys, not " + count);
+    }
+    if (count == 0) {
+      return EMPTY;
+    }
+    int[] keys = new int[count + 1];
+    // An in-order walk over the implicit tree visits the indices in key order
+    int k = firstIndex(count);
+    for (int i = 0; i < count; i++) {
+      keys[k] = sorted[i];
+      k = nextIndex(k, count);
+    }
+    return new FrozenRedBlackTree(keys, count);
+  }
+
+  //precondition: keys are sorted in strictly increasing order
+  //postcondition: an index of exactly these keys, built in O(n)
+  public static FrozenRedBlackTree fromSorted(int[] keys) {
+    for (int i = 1; i < keys.length; i++) {
+      if (keys[i - 1] >= keys[i]) {
+        throw new IllegalArgumentException("Keys must be sorted and free of duplicates, but " + keys[i - 1]
+            + " is followed by " + keys[i] + " at index " + i);
+      }
+    }
+    return ofSorted(keys, keys.length);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // -- Lookups ------------------------------------------------------------------------------------
+  // Each descends all the way to the bottom, turning right exactly when the key at index k is too small (ceiling)
+  // or small enough (floor). The answer is the last node where the walk turned the other way, which is recovered
+  // from the final index by stripping the trailing turns. (long) arithmetic turns the comparison into a sign bit
+  // without overflow.
+
+  public boolean contains(int key) {
+    int k = ceilingIndex(key);
+    return k != 0 && keys[k] == key;
+  }
+
+  //postcondition: the smallest key >= key, or NOT_FOUND
+  public long ceiling(int key) {
+    int k = ceilingIndex(key);
+    return k == 0 ? NOT_FOUND : keys[k];
+  }
+
+  //postcondition: the largest key <= key, or NOT_FOUND
+  public long floor(int key) {
+    int[] keys = this.keys;
+    int n = size;
+    int k = 1;
+    while (k <= n) {
+      // Right if keys[k] <= key
+      k = 2 * k + 1 - (int) (((long) key - keys[k]) >>> 63);
+    }
+    // Drop the left turns at the bottom and the right turn above them
+    k >>>= Integer.numberOfTrailingZeros(k) + 1;
+    return k == 0 ? NOT_FOUND : keys[k];
+  }
+
+  // Index of the smallest key >= key, or 0
+  private int ceilingIndex(int key) {
+    int[] keys = this.keys;
+    int n = size;
+    int k = 1;
+    while (k <= n) {
+      // Right if keys[k] < key
+      k = 2 * k + (int) (((long) keys[k] - key) >>> 63);
+    }
+    // Drop the right turns at the bottom and the left turn above them
+    return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+  }
+
+  // -- Iteration ----------------------------------------------------------------------------------
+
+  //postcondition: action has been called with every key in ascending order
+  public void forEach(IntConsumer action) {
+    for (int k = firstIndex(size), i = 0; i < size; i++, k = nextIndex(k, size)) {
+      action.accept(keys[k]);
+    }
+  }
+
+  //postcondition: the keys in ascending order
+  public int[] toArray() {
+    int[] sorted = new int[size];
+    for (int k = firstIndex(size), i = 0; i < size; i++, k = nextIndex(k, size)) {
+      sorted[i] = keys[k];
+    }
+    return sorted;
+  }
+
+  // Leftmost index of an implicit tree of n nodes
+  private static int firstIndex(int n) {
+    int k = 1;
+    while (2 * k <= n) {
+      k *= 2;
+    }
+    return k;
+  }
+
+  // In-order successor of index k; 0 after the last one
+  private static int nextIndex(int k, int n) {
+    if (2 * k + 1 <= n) {
+      k = 2 * k + 1;
+      while (2 * k <= n) {
+        k *= 2;
+      }
+      return k;
+    }
+    // Climb while k is a right child, then once more
+    return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+  }
+
+  // -- Updates ------------------------------------------------------------------------------------
+
+  //postcondition: a new index holding the keys of this one plus inserted, minus deleted (a key in both ends up
+  //deleted). Neither array has to be sorted or free of duplicates, and neither is modified. Runs in
+  //O(n + b log b) for b keys in the batch; this index stays as it is.
+  public FrozenRedBlackTree refreeze(int[] inserted, int[] deleted) {
+    int[] adds = sortedDistinct(inserted);
+    int[] removes = sortedDistinct(deleted);
+    int[] current = toArray();
+
+    int[] merged = new int[current.length + adds.length];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    int d = 0;
+    while (i < current.length || j < adds.length) {
+      int key;
+      if (j == adds.length || (i < current.length && current[i] < adds[j])) {
+        key = current[i++];
+      } else if (i == current.length || adds[j] < current[i]) {
+        key = adds[j++];
+      } else {
+        key = current[i++];
+        j++;
+      }
+      while (d < removes.length && removes[d] < key) {
+        d++;
+      }
+      if (d == removes.length || removes[d] != key) {
+        merged[count++] = key;
+      }
+    }
+    return ofSorted(merged, count);
+  }
+
+  private static int[] sortedDistinct(int[] keys) {
+    int[] sorted = keys.clone();
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (count == 0 || sorted[count - 1] != sorted[i]) {
+        sorted[count++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, count);
+  }
+
+  //postcondition: a new, modifiable tree holding the same keys, built in O(n) (see RedBlackTree.fromSorted)
+  public RedBlackTree thaw() {
+    return RedBlackTree.fromSorted(toArray());
+  }
+
+  //postcondition: heap bytes held by the key array (assumes a 16-byte array header)
+  public long footprintBytes() {
+    return 16 + 4L * keys.length;
+  }
+}
@@ -0,0 +1,418 @@
+//Shared red-black logic for trees whose nodes are slot indices into some flat storage rather than Node objects.
+//Subclasses only decide where the key, left, right, parent and color of a slot are kept (heap arrays, off-heap buffers,
+//mapped files); insertion, deletion, the fixups and the diagnostics are implemented once, here.
+
+public abstract class IndexedRedBlackTree {
+
+  static final boolean RED = false;
+  static final boolean BLACK = true;
+
+  // Index used for "no node", the equivalent of a null reference in RedBlackTree
+  static final int NIL = -1;
+
+  int root = NIL;
+  int size;
+  // Number of slots handed out so far (the high-water mark); slots below it are either live or on the free list
+  int slotCount;
+  // Freed slots are chained through their "left" entry
+  int freeHead = NIL;
+
+  public boolean search(int key) {
+    return findSlot(key) != NIL;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  int findSlot(int key) {
+    int node = root;
+    while (node != NIL) {
+      int nodeKey = key(node);
+      if (key == nodeKey) {
+        return node;
+      } else if (key < nodeKey) {
+        node = left(node);
+      } else {
+        node = right(node);
+      }
+    }
+    return NIL;
+  }
+
+  // -- Insertion ----------------------------------------------------------------------------------
+
+  public void insert(int key) {
+    int sizeBefore = size;
+    findOrInsert(key);
+    if (size == sizeBefore) {
+      throw new IllegalArgumentException("BST already contains a node with key " + key);
+    }
+  }
+
+  // Returns the slot holding key, inserting the key first if it isn't in the tree yet.
+  // Whether it was inserted shows in size().
+  int findOrInsert(int key) {
+    int node = root;
+    int parent = NIL;
+
+    // Traverse the tree to the left or right depending on the key
+    while (node != NIL) {
+      parent = node;
+      int nodeKey = key(node);
+      if (key < nodeKey) {
+        node = left(node);
+      } else if (key > nodeKey) {
+        node = right(node);
+      } else {
+        return node;
+      }
+    }
+
+    // Insert new node
+    int newNode = allocate(key);
+    if (parent == NIL) {
+      root = newNode;
+    } else if (key < key(parent)) {
+      setLeft(parent, newNode);
+    } else {
+      setRight(parent, newNode);
+    }
+    setParent(newNode, parent);
+    size++;
+
+    fixRedBlackPropertiesAfterInsert(newNode);
+    return newNode;
+  }
+
+  // Same cases as RedBlackTree.fixRedBlackPropertiesAfterInsert, with the case 3 recursion turned into a loop
+  private void fixRedBlackPropertiesAfterInsert(int node) {
+    while (true) {
+      int parent = parent(node);
+
+      // Case 1: Parent is NIL, we've reached the root
+      if (parent == NIL) {
+        setColor(node, BLACK);
+        return;
+      }
+
+      // Parent is black --> nothing to do
+      if (color(parent) == BLACK) {
+        return;
+      }
+
+      // From here on, parent is red (and therefore not the root, so the grandparent exists)
+      int grandparent = parent(parent);
+      int uncle = left(grandparent) == parent ? right(grandparent) : left(grandparent);
+
+      // Case 3: Uncle is red -> recolor parent, grandparent and uncle, then continue at the grandparent
+      if (uncle != NIL && color(uncle) == RED) {
+        setColor(parent, BLACK);
+        setColor(grandparent, RED);
+        setColor(uncle, BLACK);
+        node = grandparent;
+        continue;
+      }
+
+      if (parent == left(grandparent)) {
+        // Case 4a: Uncle is black and node is left->right "inner child" of its grandparent
+        if (node == right(parent)) {
+          rotateLeft(parent);
+          parent = node;
+        }
+        // Case 5a: Uncle is black and node is left->left "outer child" of its grandparent
+        rotateRight(grandparent);
+      } else {
+        // Case 4b: Uncle is black and node is right->left "inner child" of its grandparent
+        if (node == left(parent)) {
+          rotateRight(parent);
+          parent = node;
+        }
+        // Case 5b: Uncle is black and node is right->right "outer child" of its grandparent
+        rotateLeft(grandparent);
+      }
+
+      // Recolor original parent and grandparent
+      setColor(parent, BLACK);
+      setColor(grandparent, RED);
+      return;
+    }
+  }
+
+  // -- Deletion -----------------------------------------------------------------------------------
+
+  public void delete(int key) {
+    int node = findSlot(key);
+
+    // Node not found?
+    if (node == NIL) {
+      return;
+    }
+
+    deleteSlot(node);
+  }
+
+  void deleteSlot(int node) {
+    // Node has two children --> copy the inorder successor's key and delete the successor instead
+    if (left(node) != NIL && right(node) != NIL) {
+      int inOrderSuccessor = findMinimum(right(node));
+      setKey(node, key(inOrderSuccessor));
+      copyPayload(inOrderSuccessor, node);
+      node = inOrderSuccessor;
+    }
+
+    // From here on node has zero or one child
+    int child = left(node) != NIL ? left(node) : right(node);
+
+    if (child != NIL) {
+      // Replace node by its only child
+      replaceParentsChild(parent(node), node, child);
+      if (color(node) == BLACK) {
+        fixRedBlackPropertiesAfterDelete(child);
+      }
+    } else if (parent(node) == NIL) {
+      // Last node of the tree
+      root = NIL;
+    } else {
+      // Leaf: a black leaf stands in as its own temporary NIL node while fixing, then it's unlinked
+      if (color(node) == BLACK) {
+        fixRedBlackPropertiesAfterDelete(node);
+      }
+      replaceParentsChild(parent(node), node, NIL);
+    }
+
+    release(node);
+    size--;
+  }
+
+  private int findMinimum(int node) {
+    while (left(node) != NIL) {
+      node = left(node);
+    }
+    return node;
+  }
+
+  // Same cases as RedBlackTree.fixRedBlackPropertiesAfterDelete, with the case 4 recursion turned into a loop
+  private void fixRedBlackPropertiesAfterDelete(int node) {
+    while (node != root && color(node) == BLACK) {
+      int parent = parent(node);
+      boolean nodeIsLeftChild = node == left(parent);
+      int sibling = nodeIsLeftChild ? right(parent) : left(parent);
+
+      // Case 2: Red sibling
+      if (color(sibling) == RED) {
+        setColor(sibling, BLACK);
+        setColor(parent, RED);
+        if (nodeIsLeftChild) {
+          rotateLeft(parent);
+          sibling = right(parent);
+        } else {
+          rotateRight(parent);
+          sibling = left(parent);
+        }
+      }
+
+      // Cases 3+4: Black sibling with two black children
+      if (isBlack(left(sibling)) && isBlack(right(sibling))) {
+        setColor(sibling, RED);
+        // Case 3 ends the loop on the red parent (colored black below), case 4 continues at the black parent
+        node = parent;
+        continue;
+      }
+
+      // Case 5: Black sibling with at least one red child + "outer nephew" is black
+      if (nodeIsLeftChild && isBlack(right(sibling))) {
+        setColor(left(sibling), BLACK);
+        setColor(sibling, RED);
+        rotateRight(sibling);
+        sibling = right(parent);
+      } else if (!nodeIsLeftChild && isBlack(left(sibling))) {
+        setColor(right(sibling), BLACK);
+        setColor(sibling, RED);
+        rotateLeft(sibling);
+        sibling = left(parent);
+      }
+
+      // Case 6: Black sibling with at least one red child + "outer nephew" is red
+      setColor(sibling, color(parent));
+      setColor(parent, BLACK);
+      if (nodeIsLeftChild) {
+        setColor(right(sibling), BLACK);
+        rotateLeft(parent);
+      } else {
+        setColor(left(sibling), BLACK);
+        rotateRight(parent);
+      }
+      node = root;
+    }
+
+    setColor(node, BLACK);
+  }
+
+  private boolean isBlack(int node) {
+    return node == NIL || color(node) == BLACK;
+  }
+
+  // -- Helpers for insertion and deletion ---------------------------------------------------------
+
+  private void rotateRight(int node) {
+    int parent = parent(node);
+    int leftChild = left(node);
+
+    setLeft(node, right(leftChild));
+    if (right(leftChild) != NIL) {
+      setParent(right(leftChild), node);
+    }
+
+    setRight(leftChild, node);
+    setParent(node, leftChild);
+
+    replaceParentsChild(parent, node, leftChild);
+  }
+
+  private void rotateLeft(int node) {
+    int parent = parent(node);
+    int rightChild = right(node);
+
+    setRight(node, left(rightChild));
+    if (left(rightChild) != NIL) {
+      setParent(left(rightChild), node);
+    }
+
+    setLeft(rightChild, node);
+    setParent(node, rightChild);
+
+    replaceParentsChild(parent, node, rightChild);
+  }
+
+  private void replaceParentsChild(int parent, int oldChild, int newChild) {
+    if (parent == NIL) {
+      root = newChild;
+    } else if (left(parent) == oldChild) {
+      setLeft(parent, newChild);
+    } else if (right(parent) == oldChild) {
+      setRight(parent, newChild);
+    } else {
+      throw new IllegalStateException("Node is not a child of its parent");
+    }
+
+    if (newChild != NIL) {
+      setParent(newChild, parent);
+    }
+  }
+
+  // -- Diagnostics --------------------------------------------------------------------------------
+
+  //postcondition: number of nodes on the longest path from the root to a leaf (0 for an empty tree)
+  public int height() {
+    return height(root);
+  }
+
+  private int height(int node) {
+    if (node == NIL) {
+      return 0;
+    }
+    return 1 + Math.max(height(left(node)), height(right(node)));
+  }
+
+  //postcondition: number of black nodes on the path from the root to its leftmost leaf
+  public int blackHeight() {
+    int h = 0;
+    for (int node = root; node != NIL; node = left(node)) {
+      if (color(node) == BLACK) {
+        h++;
+      }
+    }
+    return h;
+  }
+
+  //postcondition: true if the root is black, no red node has a red child and every path has the same black height
+  public boolean isRedBlack() {
+    if (!isBlack(root)) {
+      return false;
+    }
+    return checkSubtree(root) >= 0;
+  }
+
+  // Returns the black height of the subtree, or -1 if it violates rule 4 or 5
+  private int checkSubtree(int node) {
+    if (node == NIL) {
+      return 0;
+    }
+    if (color(node) == RED && (!isBlack(left(node)) || !isBlack(right(node)))) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(left(node));
+    int rightHeight = checkSubtree(right(node));
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (color(node) == BLACK ? 1 : 0);
+  }
+
+  // -- Slot allocation ----------------------------------------------------------------------------
+
+  private int allocate(int key) {
+    int slot;
+    if (freeHead != NIL) {
+      slot = freeHead;
+      freeHead = left(slot);
+    } else {
+      if (slotCount == capacity()) {
+        grow();
+      }
+      slot = slotCount++;
+    }
+    setKey(slot, key);
+    setLeft(slot, NIL);
+    setRight(slot, NIL);
+    setParent(slot, NIL);
+    setColor(slot, RED);
+    return slot;
+  }
+
+  private void release(int slot) {
+    releasePayload(slot);
+    setLeft(slot, freeHead);
+    freeHead = slot;
+  }
+
+  // -- Payload hooks, for subclasses that keep a value next to every key --------------------------
+
+  // The key of slot from has just been copied into slot to (deleting a node with two children)
+  void copyPayload(int from, int to) {
+  }
+
+  // Slot is about to go onto the free list
+  void releasePayload(int slot) {
+  }
+
+  // -- Storage, provided by subclasses ------------------------------------------------------------
+
+  //postcondition: number of slots the storage can currently hold
+  abstract int capacity();
+
+  //postcondition: capacity() has increased, existing slots keep their contents
+  abstract void grow();
+
+  abstract int key(int node);
+
+  abstract void setKey(int node, int key);
+
+  abstract int left(int node);
+
+  abstract void setLeft(int node, int left);
+
+  abstract int right(int node);
+
+  abstract void setRight(int node, int right);
+
+  abstract int parent(int node);
+
+  abstract void setParent(int node, int parent);
+
+  //precondition: node is not NIL
+  abstract boolean color(int node);
+
+  abstract void setColor(int node, boolean color);
+}
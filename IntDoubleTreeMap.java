@@ -0,0 +1,131 @@
+//A sorted map from int keys to double values that never boxes. It is IntIntTreeMap with a different value type; see there.
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntToDoubleFunction;
+
+public class IntDoubleTreeMap {
+
+  private static final int NIL = IndexedRedBlackTree.NIL;
+  private static final int CHUNK_SHIFT = PrimitiveRedBlackTree.CHUNK_SHIFT;
+  private static final int CHUNK_SIZE = PrimitiveRedBlackTree.CHUNK_SIZE;
+  private static final int CHUNK_MASK = PrimitiveRedBlackTree.CHUNK_MASK;
+
+  private double[][] values = new double[0][];
+  // Number of value chunks in use; values grows geometrically, so it is usually longer than this
+  private int valueChunks;
+  // The keys, kept private so that a key can't be added or removed without its value. Every slot it hands out has
+  // its value at the same index in values.
+  private final PrimitiveRedBlackTree keys = new PrimitiveRedBlackTree() {
+    @Override
+    void grow() {
+      super.grow();
+      growValues();
+    }
+
+    @Override
+    void copyPayload(int from, int to) {
+      setValue(to, value(from));
+    }
+
+    @Override
+    void releasePayload(int slot) {
+      setValue(slot, 0);
+    }
+  };
+  private double defaultReturnValue;
+
+  //postcondition: the value get, put and remove return for a key without a mapping (0.0 unless changed)
+  public double defaultReturnValue() {
+    return defaultReturnValue;
+  }
+
+  public void setDefaultReturnValue(double defaultReturnValue) {
+    this.defaultReturnValue = defaultReturnValue;
+  }
+
+  public boolean containsKey(int key) {
+    return keys.findSlot(key) != NIL;
+  }
+
+  public double get(int key) {
+    return getOrDefault(key, defaultReturnValue);
+  }
+
+  public double getOrDefault(int key, double defaultValue) {
+    int slot = keys.findSlot(key);
+    return slot == NIL ? defaultValue : value(slot);
+  }
+
+  //postcondition: key maps to value; returns the previous value, or defaultReturnValue() if there was none
+  public double put(int key, double value) {
+    int sizeBefore = keys.size();
+    int slot = keys.findOrInsert(key);
+    double previous = keys.size() == sizeBefore ? value(slot) : defaultReturnValue;
+    setValue(slot, value);
+    return previous;
+  }
+
+  //postcondition: returns the value of key, first mapping it to mappingFunction(key) if it had none
+  public double computeIfAbsent(int key, IntToDoubleFunction mappingFunction) {
+    int slot = keys.findSlot(key);
+    if (slot != NIL) {
+      return value(slot);
+    }
+    double value = mappingFunction.applyAsDouble(key);
+    setValue(keys.findOrInsert(key), value);
+    return value;
+  }
+
+  //postcondition: key maps to value if it had no mapping, otherwise to remappingFunction(old value, value);
+  //returns the new value
+  public double merge(int key, double value, DoubleBinaryOperator remappingFunction) {
+    int sizeBefore = keys.size();
+    int slot = keys.findOrInsert(key);
+    double merged = keys.size() == sizeBefore ? remappingFunction.applyAsDouble(value(slot), value) : value;
+    setValue(slot, merged);
+    return merged;
+  }
+
+  //postcondition: key has no mapping; returns the value it had, or defaultReturnValue() if there was none
+  public double remove(int key) {
+    int slot = keys.findSlot(key);
+    if (slot == NIL) {
+      return defaultReturnValue;
+    }
+    double previous = value(slot);
+    keys.deleteSlot(slot);
+    return previous;
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  //postcondition: approximate number of heap bytes held by this map (see PrimitiveRedBlackTree.footprintBytes)
+  public long footprintBytes() {
+    return keys.footprintBytes() + valueChunks * (16 + 8L * CHUNK_SIZE) + 16 + 4L * values.length;
+  }
+
+  //postcondition: footprintBytes() divided by the number of keys (0 for an empty map)
+  public double bytesPerKey() {
+    return size() == 0 ? 0 : (double) footprintBytes() / size();
+  }
+
+  // -- Value storage ------------------------------------------------------------------------------
+
+  private void growValues() {
+    if (valueChunks == values.length) {
+      values = Arrays.copyOf(values, PrimitiveRedBlackTree.grownLength(valueChunks, Integer.MAX_VALUE >>> CHUNK_SHIFT));
+    }
+    values[valueChunks++] = new double[CHUNK_SIZE];
+  }
+
+  private double value(int slot) {
+    return values[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+  }
+
+  private void setValue(int slot, double value) {
+    values[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = value;
+  }
+}
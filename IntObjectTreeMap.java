@@ -0,0 +1,141 @@
+//A sorted map from int keys to object values that never boxes its keys. It is IntIntTreeMap with object values;
+//merge follows java.util.Map.merge, so a null result removes the mapping.
+
+import java.util.Arrays;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+public class IntObjectTreeMap<V> {
+
+  private static final int NIL = IndexedRedBlackTree.NIL;
+  private static final int CHUNK_SHIFT = PrimitiveRedBlackTree.CHUNK_SHIFT;
+  private static final int CHUNK_SIZE = PrimitiveRedBlackTree.CHUNK_SIZE;
+  private static final int CHUNK_MASK = PrimitiveRedBlackTree.CHUNK_MASK;
+
+  private Object[][] values = new Object[0][];
+  // Number of value chunks in use; values grows geometrically, so it is usually longer than this
+  private int valueChunks;
+  // The keys, kept private so that a key can't be added or removed without its value. Every slot it hands out has
+  // its value at the same index in values.
+  private final PrimitiveRedBlackTree keys = new PrimitiveRedBlackTree() {
+    @Override
+    void grow() {
+      super.grow();
+      growValues();
+    }
+
+    @Override
+    void copyPayload(int from, int to) {
+      setValue(to, value(from));
+    }
+
+    // Drop the reference so a removed value can be collected
+    @Override
+    void releasePayload(int slot) {
+      setValue(slot, null);
+    }
+  };
+
+  public boolean containsKey(int key) {
+    return keys.findSlot(key) != NIL;
+  }
+
+  //postcondition: the value of key, or null if there is none
+  public V get(int key) {
+    return getOrDefault(key, null);
+  }
+
+  public V getOrDefault(int key, V defaultValue) {
+    int slot = keys.findSlot(key);
+    return slot == NIL ? defaultValue : value(slot);
+  }
+
+  //postcondition: key maps to value; returns the previous value, or null if there was none
+  public V put(int key, V value) {
+    int sizeBefore = keys.size();
+    int slot = keys.findOrInsert(key);
+    V previous = keys.size() == sizeBefore ? value(slot) : null;
+    setValue(slot, value);
+    return previous;
+  }
+
+  //postcondition: returns the value of key, first mapping it to mappingFunction(key) if it had none
+  //(unless that is null, which leaves the key unmapped)
+  public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction) {
+    int slot = keys.findSlot(key);
+    if (slot != NIL) {
+      return value(slot);
+    }
+    V value = mappingFunction.apply(key);
+    if (value != null) {
+      setValue(keys.findOrInsert(key), value);
+    }
+    return value;
+  }
+
+  //precondition: value is not null
+  //postcondition: key maps to value if it had no mapping, otherwise to remappingFunction(old value, value), or is
+  //removed if that returns null; returns the new value
+  public V merge(int key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+    if (value == null) {
+      throw new NullPointerException("merge needs a value");
+    }
+    int sizeBefore = keys.size();
+    int slot = keys.findOrInsert(key);
+    if (keys.size() != sizeBefore) {
+      setValue(slot, value);
+      return value;
+    }
+    V merged = remappingFunction.apply(value(slot), value);
+    if (merged == null) {
+      keys.deleteSlot(slot);
+    } else {
+      setValue(slot, merged);
+    }
+    return merged;
+  }
+
+  //postcondition: key has no mapping; returns the value it had, or null if there was none
+  public V remove(int key) {
+    int slot = keys.findSlot(key);
+    if (slot == NIL) {
+      return null;
+    }
+    V previous = value(slot);
+    keys.deleteSlot(slot);
+    return previous;
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  //postcondition: approximate number of heap bytes held by this map (see PrimitiveRedBlackTree.footprintBytes)
+  public long footprintBytes() {
+    // The value objects themselves are not counted, only the references to them
+    return keys.footprintBytes() + valueChunks * (16 + 4L * CHUNK_SIZE) + 16 + 4L * values.length;
+  }
+
+  //postcondition: footprintBytes() divided by the number of keys (0 for an empty map)
+  public double bytesPerKey() {
+    return size() == 0 ? 0 : (double) footprintBytes() / size();
+  }
+
+  // -- Value storage ------------------------------------------------------------------------------
+
+  private void growValues() {
+    if (valueChunks == values.length) {
+      values = Arrays.copyOf(values, PrimitiveRedBlackTree.grownLength(valueChunks, Integer.MAX_VALUE >>> CHUNK_SHIFT));
+    }
+    values[valueChunks++] = new Object[CHUNK_SIZE];
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int slot) {
+    return (V) values[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+  }
+
+  private void setValue(int slot, V value) {
+    values[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = value;
+  }
+}
@@ -0,0 +1,479 @@
+//An interval tree: a red-black tree of closed int intervals [low, high], ordered by low (ties broken by high), where
+//every node also keeps the largest high in its subtree. That maximum lets a query skip every subtree whose intervals
+//all end before the query starts, and the order by low lets it stop as soon as intervals start after the query ends.
+//The rebalancing is the same as RedBlackTree's (Woltmann's cases, in the loop form of IndexedRedBlackTree); the
+//maximum is repaired locally by every rotation and along the one path an insert or delete changes.
+//Queries walk the parent pointers instead of a stack and report through an IntervalConsumer, so they allocate nothing.
+
+public final class IntervalRedBlackTree {
+
+  static final boolean RED = false;
+  static final boolean BLACK = true;
+
+  //Receives the intervals a query reports
+  @FunctionalInterface
+  public interface IntervalConsumer {
+    void accept(int low, int high);
+  }
+
+  private INode root;
+  private int size;
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  //postcondition: true if exactly [low, high] is in the tree
+  public boolean contains(int low, int high) {
+    return find(low, high) != null;
+  }
+
+  private INode find(int low, int high) {
+    INode node = root;
+    while (node != null) {
+      if (low == node.low && high == node.high) {
+        return node;
+      }
+      node = isBefore(low, high, node) ? node.left : node.right;
+    }
+    return null;
+  }
+
+  // Whether [low, high] sorts before node's interval
+  private static boolean isBefore(int low, int high, INode node) {
+    return low < node.low || (low == node.low && high < node.high);
+  }
+
+  private static void checkInterval(int low, int high) {
+    if (low > high) {
+      throw new IllegalArgumentException("Interval [" + low + ", " + high + "] ends before it starts");
+    }
+  }
+
+  // -- Queries ------------------------------------------------------------------------------------
+
+  //postcondition: true if some interval [l, h] in the tree overlaps [low, high], i.e. l <= high and h >= low.
+  //Runs in O(log n).
+  public boolean overlapsAny(int low, int high) {
+    checkInterval(low, high);
+    INode node = root;
+    while (node != null) {
+      if (node.low <= high && node.high >= low) {
+        return true;
+      }
+      if (node.left != null && node.left.maxHigh >= low) {
+        // If the left subtree reaches low but holds no overlap, every interval there starts after high, and so
+        // does everything to the right: going left is never a wrong turn
+        node = node.left;
+      } else if (node.low > high) {
+        return false;
+      } else {
+        node = node.right;
+      }
+    }
+    return false;
+  }
+
+  //postcondition: true if some interval in the tree contains point
+  public boolean anyContains(int point) {
+    return overlapsAny(point, point);
+  }
+
+  //postcondition: action has been called with every interval in the tree that overlaps [low, high], in tree order.
+  //Visits O(log n) nodes per reported interval at worst, and far fewer when the overlapping intervals are
+  //neighbors in the tree, as they are for a set of ranges that don't nest much.
+  public void forEachOverlapping(int low, int high, IntervalConsumer action) {
+    checkInterval(low, high);
+    // In-order walk over the parent pointers; previous tells from where the walk entered node
+    INode node = root;
+    INode previous = null;
+    while (node != null) {
+      INode next;
+      if (previous == node.parent) {
+        // Entered from above: skip the subtree if it ends too early, else go left first
+        if (node.maxHigh < low) {
+          next = node.parent;
+        } else if (node.left != null) {
+          next = node.left;
+        } else {
+          next = visit(node, low, high, action);
+        }
+      } else if (previous == node.left) {
+        next = visit(node, low, high, action);
+      } else {
+        next = node.parent;
+      }
+      previous = node;
+      node = next;
+    }
+  }
+
+  // Reports node if it overlaps, and returns where the walk goes next (null ends it: in tree order, every later
+  // interval starts after high as well)
+  private static INode visit(INode node, int low, int high, IntervalConsumer action) {
+    if (node.low > high) {
+      return null;
+    }
+    if (node.high >= low) {
+      action.accept(node.low, node.high);
+    }
+    return node.right != null ? node.right : node.parent;
+  }
+
+  //postcondition: action has been called with every interval in the tree that contains point, in tree order
+  public void forEachContaining(int point, IntervalConsumer action) {
+    forEachOverlapping(point, point, action);
+  }
+
+  //postcondition: action has been called with every interval in tree order
+  public void forEach(IntervalConsumer action) {
+    forEachOverlapping(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+  }
+
+  // -- Insertion ----------------------------------------------------------------------------------
+
+  //precondition: low <= high
+  //postcondition: [low, high] is in the tree
+  //throws IllegalArgumentException if exactly this interval is already there
+  public void insert(int low, int high) {
+    checkInterval(low, high);
+    INode node = root;
+    INode parent = null;
+
+    // Traverse the tree to the left or right depending on the interval
+    while (node != null) {
+      parent = node;
+      if (low == node.low && high == node.high) {
+        throw new IllegalArgumentException("Tree already contains the interval [" + low + ", " + high + "]");
+      }
+      node = isBefore(low, high, node) ? node.left : node.right;
+    }
+
+    // Insert new node
+    INode newNode = new INode(low, high);
+    if (parent == null) {
+      root = newNode;
+    } else if (isBefore(low, high, parent)) {
+      parent.left = newNode;
+    } else {
+      parent.right = newNode;
+    }
+    newNode.parent = parent;
+    size++;
+
+    // Every maximum is right before the fixup starts, and its rotations keep them right
+    updateMaxUpFrom(parent);
+    fixRedBlackPropertiesAfterInsert(newNode);
+  }
+
+  // Same cases as RedBlackTree.fixRedBlackPropertiesAfterInsert, with the case 3 recursion turned into a loop
+  private void fixRedBlackPropertiesAfterInsert(INode node) {
+    while (true) {
+      INode parent = node.parent;
+
+      // Case 1: Parent is null, we've reached the root
+      if (parent == null) {
+        node.color = BLACK;
+        return;
+      }
+
+      // Parent is black --> nothing to do
+      if (parent.color == BLACK) {
+        return;
+      }
+
+      // From here on, parent is red (and therefore not the root, so the grandparent exists)
+      INode grandparent = parent.parent;
+      INode uncle = grandparent.left == parent ? grandparent.right : grandparent.left;
+
+      // Case 3: Uncle is red -> recolor parent, grandparent and uncle, then continue at the grandparent
+      if (uncle != null && uncle.color == RED) {
+        parent.color = BLACK;
+        grandparent.color = RED;
+        uncle.color = BLACK;
+        node = grandparent;
+        continue;
+      }
+
+      if (parent == grandparent.left) {
+        // Case 4a: Uncle is black and node is left->right "inner child" of its grandparent
+        if (node == parent.right) {
+          rotateLeft(parent);
+          parent = node;
+        }
+        // Case 5a: Uncle is black and node is left->left "outer child" of its grandparent
+        rotateRight(grandparent);
+      } else {
+        // Case 4b: Uncle is black and node is right->left "inner child" of its grandparent
+        if (node == parent.left) {
+          rotateRight(parent);
+          parent = node;
+        }
+        // Case 5b: Uncle is black and node is right->right "outer child" of its grandparent
+        rotateLeft(grandparent);
+      }
+
+      // Recolor original parent and grandparent
+      parent.color = BLACK;
+      grandparent.color = RED;
+      return;
+    }
+  }
+
+  // -- Deletion -----------------------------------------------------------------------------------
+
+  //postcondition: exactly [low, high] is not in the tree
+  public void delete(int low, int high) {
+    INode node = find(low, high);
+
+    // Node not found?
+    if (node == null) {
+      return;
+    }
+
+    // Node has two children --> copy the inorder successor's interval and delete the successor instead
+    if (node.left != null && node.right != null) {
+      INode inOrderSuccessor = node.right;
+      while (inOrderSuccessor.left != null) {
+        inOrderSuccessor = inOrderSuccessor.left;
+      }
+      node.low = inOrderSuccessor.low;
+      node.high = inOrderSuccessor.high;
+      updateMaxUpFrom(node);
+      node = inOrderSuccessor;
+    }
+
+    // From here on node has zero or one child; the maxima above it are repaired before any rotation can move them
+    INode child = node.left != null ? node.left : node.right;
+
+    if (child != null) {
+      // Replace node by its only child
+      replaceParentsChild(node.parent, node, child);
+      updateMaxUpFrom(child.parent);
+      if (node.color == BLACK) {
+        fixRedBlackPropertiesAfterDelete(child);
+      }
+    } else if (node.parent == null) {
+      // Last node of the tree
+      root = null;
+    } else {
+      // Leaf: a black leaf stands in as its own temporary null node while fixing, then it's unlinked
+      if (node.color == BLACK) {
+        fixRedBlackPropertiesAfterDelete(node);
+      }
+      INode parent = node.parent;
+      replaceParentsChild(parent, node, null);
+      updateMaxUpFrom(parent);
+    }
+
+    node.parent = null;
+    node.left = null;
+    node.right = null;
+    size--;
+  }
+
+  // Same cases as RedBlackTree.fixRedBlackPropertiesAfterDelete, with the case 4 recursion turned into a loop
+  private void fixRedBlackPropertiesAfterDelete(INode node) {
+    while (node != root && node.color == BLACK) {
+      INode parent = node.parent;
+      boolean nodeIsLeftChild = node == parent.left;
+      INode sibling = nodeIsLeftChild ? parent.right : parent.left;
+
+      // Case 2: Red sibling
+      if (sibling.color == RED) {
+        sibling.color = BLACK;
+        parent.color = RED;
+        if (nodeIsLeftChild) {
+          rotateLeft(parent);
+          sibling = parent.right;
+        } else {
+          rotateRight(parent);
+          sibling = parent.left;
+        }
+      }
+
+      // Cases 3+4: Black sibling with two black children
+      if (isBlack(sibling.left) && isBlack(sibling.right)) {
+        sibling.color = RED;
+        // Case 3 ends the loop on the red parent (colored black below), case 4 continues at the black parent
+        node = parent;
+        continue;
+      }
+
+      // Case 5: Black sibling with at least one red child + "outer nephew" is black
+      if (nodeIsLeftChild && isBlack(sibling.right)) {
+        sibling.left.color = BLACK;
+        sibling.color = RED;
+        rotateRight(sibling);
+        sibling = parent.right;
+      } else if (!nodeIsLeftChild && isBlack(sibling.left)) {
+        sibling.right.color = BLACK;
+        sibling.color = RED;
+        rotateLeft(sibling);
+        sibling = parent.left;
+      }
+
+      // Case 6: Black sibling with at least one red child + "outer nephew" is red
+      sibling.color = parent.color;
+      parent.color = BLACK;
+      if (nodeIsLeftChild) {
+        sibling.right.color = BLACK;
+        rotateLeft(parent);
+      } else {
+        sibling.left.color = BLACK;
+        rotateRight(parent);
+      }
+      node = root;
+    }
+
+    node.color = BLACK;
+  }
+
+  private static boolean isBlack(INode node) {
+    return node == null || node.color == BLACK;
+  }
+
+  // -- Helpers for insertion and deletion ---------------------------------------------------------
+  // A rotation doesn't change which intervals lie below the rotated pair, so repairing the two nodes that moved
+  // (lower one first) keeps every maximum right.
+
+  private void rotateRight(INode node) {
+    INode parent = node.parent;
+    INode leftChild = node.left;
+
+    node.left = leftChild.right;
+    if (leftChild.right != null) {
+      leftChild.right.parent = node;
+    }
+
+    leftChild.right = node;
+    node.parent = leftChild;
+
+    replaceParentsChild(parent, node, leftChild);
+    updateMax(node);
+    updateMax(leftChild);
+  }
+
+  private void rotateLeft(INode node) {
+    INode parent = node.parent;
+    INode rightChild = node.right;
+
+    node.right = rightChild.left;
+    if (rightChild.left != null) {
+      rightChild.left.parent = node;
+    }
+
+    rightChild.left = node;
+    node.parent = rightChild;
+
+    replaceParentsChild(parent, node, rightChild);
+    updateMax(node);
+    updateMax(rightChild);
+  }
+
+  private void replaceParentsChild(INode parent, INode oldChild, INode newChild) {
+    if (parent == null) {
+      root = newChild;
+    } else if (parent.left == oldChild) {
+      parent.left = newChild;
+    } else if (parent.right == oldChild) {
+      parent.right = newChild;
+    } else {
+      throw new IllegalStateException("Node is not a child of its parent");
+    }
+
+    if (newChild != null) {
+      newChild.parent = parent;
+    }
+  }
+
+  private static void updateMax(INode node) {
+    int max = node.high;
+    if (node.left != null && node.left.maxHigh > max) {
+      max = node.left.maxHigh;
+    }
+    if (node.right != null && node.right.maxHigh > max) {
+      max = node.right.maxHigh;
+    }
+    node.maxHigh = max;
+  }
+
+  // Repairs the maxima from node up to the root, stopping early where one doesn't change (nothing above it can)
+  private static void updateMaxUpFrom(INode node) {
+    while (node != null) {
+      int before = node.maxHigh;
+      updateMax(node);
+      if (node.maxHigh == before) {
+        return;
+      }
+      node = node.parent;
+    }
+  }
+
+  // -- Diagnostics --------------------------------------------------------------------------------
+
+  //postcondition: number of nodes on the longest path from the root to a leaf
+  public int height() {
+    return height(root);
+  }
+
+  // Recursion depth is the height of the tree
+  private static int height(INode node) {
+    return node == null ? 0 : 1 + Math.max(height(node.left), height(node.right));
+  }
+
+  //postcondition: true if the tree is a valid red-black tree in interval order and every node's maximum is the
+  //largest high in its subtree
+  public boolean isRedBlack() {
+    return isBlack(root) && checkSubtree(root) >= 0;
+  }
+
+  // Black height of the subtree, or -1 if it breaks a rule, the order, a parent link or a maximum
+  private static int checkSubtree(INode node) {
+    if (node == null) {
+      return 0;
+    }
+    if (node.color == RED && (!isBlack(node.left) || !isBlack(node.right))) {
+      return -1;
+    }
+    if (node.left != null && (node.left.parent != node || !isBefore(node.left.low, node.left.high, node))) {
+      return -1;
+    }
+    if (node.right != null && (node.right.parent != node || isBefore(node.right.low, node.right.high, node))) {
+      return -1;
+    }
+    int max = node.high;
+    max = node.left == null ? max : Math.max(max, node.left.maxHigh);
+    max = node.right == null ? max : Math.max(max, node.right.maxHigh);
+    if (max != node.maxHigh) {
+      return -1;
+    }
+    int leftHeight = checkSubtree(node.left);
+    int rightHeight = checkSubtree(node.right);
+    if (leftHeight < 0 || leftHeight != rightHeight) {
+      return -1;
+    }
+    return leftHeight + (node.color == BLACK ? 1 : 0);
+  }
+
+  private static final class INode {
+    int low;
+    int high;
+    // Largest high in the subtree rooted here
+    int maxHigh;
+    INode left;
+    INode right;
+    INode parent;
+    boolean color;
+
+    INode(int low, int high) {
+      this.low = low;
+      this.high = high;
+      this.maxHigh = high;
+    }
+  }
+}
@@ -0,0 +1,275 @@
+//A RedBlackTree over int keys that lives in memory-mapped files, so it can be far larger than the Java heap and is
+//there again after a restart without any load step. Nodes are the same 20-byte records as in OffHeapRedBlackTree,
+//addressed by record index; the records are spread over segment files of 2^20 records (20 MB) each, which are
+//mapped one by one as the tree grows. A small header file keeps the root, size and free list.
+//Once the pages are in the page cache, search costs about as much as in OffHeapRedBlackTree; pages that aren't
+//are read from disk by the operating system when first touched.
+//flush() (and close()) write everything back. Changes that aren't flushed may be partly lost in a crash, so a tree
+//that has to survive crashes intact should pair this with a log like DurableRedBlackTree's.
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class MappedRedBlackTree extends IndexedRedBlackTree implements AutoCloseable {
+
+  static final String HEADER_FILE = "tree.header";
+
+  private static final int SEGMENT_SHIFT = 20;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+  private static final long SEGMENT_BYTES = (long) OffHeapRedBlackTree.RECORD_BYTES << SEGMENT_SHIFT;
+  private static final int MAX_SEGMENTS = Integer.MAX_VALUE >>> SEGMENT_SHIFT;
+
+  // Header layout, in bytes; files are little-endian whatever the platform
+  private static final int MAGIC = 0x5242544D;
+  private static final int VERSION = 1;
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_VERSION = 4;
+  private static final int HEADER_RECORD_BYTES = 8;
+  private static final int HEADER_SEGMENT_SHIFT = 12;
+  private static final int HEADER_SEGMENTS = 16;
+  private static final int HEADER_ROOT = 20;
+  private static final int HEADER_SIZE = 24;
+  private static final int HEADER_SLOT_COUNT = 28;
+  private static final int HEADER_FREE_HEAD = 32;
+  private static final int HEADER_BYTES = 36;
+
+  private final Path directory;
+  private final MappedByteBuffer header;
+  private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+  // Number of segments mapped; the segments array grows geometrically, so it is usually longer than this
+  private int segmentCount;
+  private boolean closed;
+
+  private MappedRedBlackTree(Path directory, MappedByteBuffer header) {
+    this.directory = directory;
+    this.header = header;
+  }
+
+  //postcondition: the tree stored in directory, or a new empty one there if the directory holds none yet.
+  //Only the segments are mapped; no node is read until it is used.
+  public static MappedRedBlackTree open(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    Path headerFile = directory.resolve(HEADER_FILE);
+    boolean fresh = !Files.exists(headerFile);
+    MappedRedBlackTree tree = new MappedRedBlackTree(directory, map(headerFile, HEADER_BYTES));
+    try {
+      if (fresh) {
+        tree.header.putInt(HEADER_MAGIC, MAGIC).putInt(HEADER_VERSION, VERSION)
+            .putInt(HEADER_RECORD_BYTES, OffHeapRedBlackTree.RECORD_BYTES)
+            .putInt(HEADER_SEGMENT_SHIFT, SEGMENT_SHIFT);
+        tree.writeHeader();
+        tree.header.force();
+      } else {
+        tree.readHeader(headerFile);
+      }
+    } catch (IOException | RuntimeException e) {
+      tree.unmapAll();
+      throw e;
+    }
+    return tree;
+  }
+
+  //postcondition: all records and the header have been written back to disk
+  public void flush() {
+    ensureOpen();
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i].force();
+    }
+    header.force();
+  }
+
+  //postcondition: the tree is flushed and unmapped; any further use of it throws IllegalStateException
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    flush();
+    closed = true;
+    unmapAll();
+  }
+
+  //postcondition: number of bytes of the segment files currently mapped
+  public long mappedBytes() {
+    return segmentCount * SEGMENT_BYTES;
+  }
+
+  @Override
+  public boolean search(int key) {
+    ensureOpen();
+    return super.search(key);
+  }
+
+  @Override
+  public void insert(int key) {
+    ensureOpen();
+    try {
+      super.insert(key);
+    } finally {
+      writeHeader();
+    }
+  }
+
+  @Override
+  public void delete(int key) {
+    ensureOpen();
+    try {
+      super.delete(key);
+    } finally {
+      writeHeader();
+    }
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Tree has been closed");
+    }
+  }
+
+  // -- Header -------------------------------------------------------------------------------------
+
+  // The header only changes in memory; flush() takes it to disk along with the records
+  private void writeHeader() {
+    header.putInt(HEADER_SEGMENTS, segmentCount)
+        .putInt(HEADER_ROOT, root)
+        .putInt(HEADER_SIZE, size)
+        .putInt(HEADER_SLOT_COUNT, slotCount)
+        .putInt(HEADER_FREE_HEAD, freeHead);
+  }
+
+  private void readHeader(Path headerFile) throws IOException {
+    if (header.getInt(HEADER_MAGIC) != MAGIC) {
+      throw new IOException(headerFile + " is not a mapped tree header");
+    }
+    if (header.getInt(HEADER_VERSION) != VERSION
+        || header.getInt(HEADER_RECORD_BYTES) != OffHeapRedBlackTree.RECORD_BYTES
+        || header.getInt(HEADER_SEGMENT_SHIFT) != SEGMENT_SHIFT) {
+      throw new IOException(headerFile + " has an unsupported version or record layout");
+    }
+    int storedSegments = header.getInt(HEADER_SEGMENTS);
+    root = header.getInt(HEADER_ROOT);
+    size = header.getInt(HEADER_SIZE);
+    slotCount = header.getInt(HEADER_SLOT_COUNT);
+    freeHead = header.getInt(HEADER_FREE_HEAD);
+    if (storedSegments < 0 || slotCount < 0 || (long) slotCount > (long) storedSegments << SEGMENT_SHIFT
+        || size < 0 || size > slotCount || !isSlotOrNil(root) || !isSlotOrNil(freeHead)) {
+      throw new IOException(headerFile + " is corrupt");
+    }
+    segments = new MappedByteBuffer[storedSegments];
+    for (int i = 0; i < storedSegments; i++) {
+      Path segmentFile = segmentFile(i);
+      if (!Files.exists(segmentFile)) {
+        throw new IOException("Segment " + segmentFile + " is missing");
+      }
+      segments[i] = map(segmentFile, SEGMENT_BYTES);
+      segmentCount = i + 1;
+    }
+  }
+
+  // A stored link must point at a slot the segments hold, or the first access through it fails far from here
+  private boolean isSlotOrNil(int slot) {
+    return slot == NIL || (slot >= 0 && slot < slotCount);
+  }
+
+  private Path segmentFile(int index) {
+    return directory.resolve(String.format("segment-%05d.rbt", index));
+  }
+
+  // Maps the first length bytes of file for reading and writing, growing the (sparse) file if it is shorter
+  private static MappedByteBuffer map(Path file, long length) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return buffer;
+    }
+  }
+
+  private void unmapAll() {
+    for (int i = 0; i < segmentCount; i++) {
+      OffHeapRedBlackTree.freeBuffer(segments[i]);
+    }
+    segments = new MappedByteBuffer[0];
+    segmentCount = 0;
+    OffHeapRedBlackTree.freeBuffer(header);
+  }
+
+  // -- Slot storage -------------------------------------------------------------------------------
+
+  int capacity() {
+    return segmentCount << SEGMENT_SHIFT;
+  }
+
+  // Maps one more segment file; the storage interface has no checked exceptions, so I/O errors are unchecked here
+  void grow() {
+    if (segmentCount == MAX_SEGMENTS) {
+      throw new IllegalStateException("Tree is full");
+    }
+    MappedByteBuffer segment;
+    try {
+      segment = map(segmentFile(segmentCount), SEGMENT_BYTES);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not map another segment in " + directory, e);
+    }
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, PrimitiveRedBlackTree.grownLength(segmentCount, MAX_SEGMENTS));
+    }
+    segments[segmentCount++] = segment;
+    writeHeader();
+  }
+
+  private MappedByteBuffer segment(int node) {
+    return segments[node >>> SEGMENT_SHIFT];
+  }
+
+  private static int offset(int node) {
+    return (node & SEGMENT_MASK) * OffHeapRedBlackTree.RECORD_BYTES;
+  }
+
+  int key(int node) {
+    return segment(node).getInt(offset(node) + OffHeapRedBlackTree.KEY);
+  }
+
+  void setKey(int node, int key) {
+    segment(node).putInt(offset(node) + OffHeapRedBlackTree.KEY, key);
+  }
+
+  int left(int node) {
+    return segment(node).getInt(offset(node) + OffHeapRedBlackTree.LEFT);
+  }
+
+  void setLeft(int node, int left) {
+    segment(node).putInt(offset(node) + OffHeapRedBlackTree.LEFT, left);
+  }
+
+  int right(int node) {
+    return segment(node).getInt(offset(node) + OffHeapRedBlackTree.RIGHT);
+  }
+
+  void setRight(int node, int right) {
+    segment(node).putInt(offset(node) + OffHeapRedBlackTree.RIGHT, right);
+  }
+
+  int parent(int node) {
+    return segment(node).getInt(offset(node) + OffHeapRedBlackTree.PARENT);
+  }
+
+  void setParent(int node, int parent) {
+    segment(node).putInt(offset(node) + OffHeapRedBlackTree.PARENT, parent);
+  }
+
+  boolean color(int node) {
+    return segment(node).get(offset(node) + OffHeapRedBlackTree.COLOR) != 0;
+  }
+
+  void setColor(int node, boolean color) {
+    segment(node).put(offset(node) + OffHeapRedBlackTree.COLOR, color == BLACK ? (byte) 1 : (byte) 0);
+  }
+}
@@ -7,6 +7,14 @@ public class Node {
 
   boolean color;
 
+  // Occurrences of key; always 1 unless the tree is a multiset
+  int count = 1;
+  // Number of keys in the subtree rooted here, including this one (counting every occurrence in a multiset)
+  int size = 1;
+  // Number of nodes on the longest path from here down to a leaf, including this one. A red-black tree of 2^31 keys
+  // is at most 62 levels deep, so a byte is enough, and it keeps a Node at 40 bytes despite the count.
+  byte height = 1;
+
   public Node(int key) {
     this.key = key;
   }
@@ -0,0 +1,186 @@
+//A RedBlackTree over int keys whose nodes live outside the Java heap, so the garbage collector never scans them.
+//Every node is a fixed-size record (key, left, right, parent, color) inside a chunk of direct memory. Children and
+//parents are record indices, not references, and the memory is released explicitly by close() (see isExplicitlyFreed()).
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class OffHeapRedBlackTree extends IndexedRedBlackTree implements AutoCloseable {
+
+  // Record layout, in bytes (shared with MappedRedBlackTree)
+  static final int KEY = 0;
+  static final int LEFT = 4;
+  static final int RIGHT = 8;
+  static final int PARENT = 12;
+  static final int COLOR = 16;
+  static final int RECORD_BYTES = 20;
+
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  private static final int MAX_CHUNKS = Integer.MAX_VALUE >>> CHUNK_SHIFT;
+
+  // sun.misc.Unsafe.invokeCleaner and the Unsafe instance to call it on, looked up once; both are null when this JVM
+  // doesn't offer them, and then native memory is only returned once the buffers are garbage collected
+  private static final Method INVOKE_CLEANER;
+  private static final Object UNSAFE;
+
+  static {
+    Method invokeCleaner = null;
+    Object unsafe = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      invokeCleaner = null;
+      unsafe = null;
+    }
+    INVOKE_CLEANER = invokeCleaner;
+    UNSAFE = unsafe;
+  }
+
+  private ByteBuffer[] chunks = new ByteBuffer[0];
+  // Number of chunks in use; the chunks array grows geometrically, so it is usually longer than this
+  private int chunkCount;
+  private boolean closed;
+
+  //postcondition: number of off-heap bytes currently reserved by this tree
+  public long offHeapBytes() {
+    return (long) chunkCount * (RECORD_BYTES << CHUNK_SHIFT);
+  }
+
+  //postcondition: all off-heap memory is freed; any further use of the tree throws IllegalStateException
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (int i = 0; i < chunkCount; i++) {
+      freeBuffer(chunks[i]);
+    }
+    chunks = new ByteBuffer[0];
+    chunkCount = 0;
+    root = NIL;
+    size = 0;
+    slotCount = 0;
+    freeHead = NIL;
+  }
+
+  @Override
+  public boolean search(int key) {
+    ensureOpen();
+    return super.search(key);
+  }
+
+  @Override
+  public void insert(int key) {
+    ensureOpen();
+    super.insert(key);
+  }
+
+  @Override
+  public void delete(int key) {
+    ensureOpen();
+    super.delete(key);
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Tree has been closed");
+    }
+  }
+
+  //postcondition: true if close() (here and in MappedRedBlackTree) releases native memory right away. False when this
+  //JVM has no accessible buffer cleaner; the memory is then only returned once the closed buffers are garbage collected.
+  public static boolean isExplicitlyFreed() {
+    return INVOKE_CLEANER != null;
+  }
+
+  // Releases the native memory of a direct (or mapped) buffer right away instead of waiting for the GC,
+  // if isExplicitlyFreed(); otherwise does nothing
+  static void freeBuffer(ByteBuffer buffer) {
+    if (INVOKE_CLEANER == null) {
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invoke(UNSAFE, buffer);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Buffer cleaner became inaccessible", e);
+    } catch (InvocationTargetException e) {
+      // Only happens for buffers that are not direct or are slices/duplicates, which this class never frees
+      throw new IllegalStateException("Could not free buffer", e.getCause());
+    }
+  }
+
+  // -- Slot storage -------------------------------------------------------------------------------
+
+  int capacity() {
+    return chunkCount << CHUNK_SHIFT;
+  }
+
+  void grow() {
+    if (chunkCount == MAX_CHUNKS) {
+      throw new IllegalStateException("Tree is full");
+    }
+    if (chunkCount == chunks.length) {
+      chunks = Arrays.copyOf(chunks, PrimitiveRedBlackTree.grownLength(chunkCount, MAX_CHUNKS));
+    }
+    chunks[chunkCount] = ByteBuffer.allocateDirect(RECORD_BYTES << CHUNK_SHIFT).order(ByteOrder.nativeOrder());
+    chunkCount++;
+  }
+
+  private ByteBuffer chunk(int node) {
+    return chunks[node >>> CHUNK_SHIFT];
+  }
+
+  private static int offset(int node) {
+    return (node & CHUNK_MASK) * RECORD_BYTES;
+  }
+
+  int key(int node) {
+    return chunk(node).getInt(offset(node) + KEY);
+  }
+
+  void setKey(int node, int key) {
+    chunk(node).putInt(offset(node) + KEY, key);
+  }
+
+  int left(int node) {
+    return chunk(node).getInt(offset(node) + LEFT);
+  }
+
+  void setLeft(int node, int left) {
+    chunk(node).putInt(offset(node) + LEFT, left);
+  }
+
+  int right(int node) {
+    return chunk(node).getInt(offset(node) + RIGHT);
+  }
+
+  void setRight(int node, int right) {
+    chunk(node).putInt(offset(node) + RIGHT, right);
+  }
+
+  int parent(int node) {
+    return chunk(node).getInt(offset(node) + PARENT);
+  }
+
+  void setParent(int node, int parent) {
+    chunk(node).putInt(offset(node) + PARENT, parent);
+  }
+
+  boolean color(int node) {
+    return chunk(node).get(offset(node) + COLOR) != 0;
+  }
+
+  void setColor(int node, boolean color) {
+    chunk(node).put(offset(node) + COLOR, color == BLACK ? (byte) 1 : (byte) 0);
+  }
+}
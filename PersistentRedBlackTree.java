@@ -0,0 +1,322 @@
+//An immutable RedBlackTree. insert and delete never modify a tree; they return a new version that copies only the
+//nodes on the search path and shares every untouched subtree with the old one. Holding on to a version is therefore an
+//O(1) snapshot, and any number of threads can read any version without locks.
+//Nodes have no parent pointers, so rebalancing is done on the way back up the recursion, following Okasaki's
+//insertion and Kahrs' deletion for functional red-black trees.
+
+import java.util.function.IntConsumer;
+
+public final class PersistentRedBlackTree {
+
+  static final boolean RED = false;
+  static final boolean BLACK = true;
+
+  private static final PersistentRedBlackTree EMPTY = new PersistentRedBlackTree(null, 0);
+
+  private final PNode root;
+  private final int size;
+
+  private PersistentRedBlackTree(PNode root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  public static PersistentRedBlackTree empty() {
+    return EMPTY;
+  }
+
+  //postcondition: this tree; versions are immutable, so the snapshot is the version itself
+  public PersistentRedBlackTree snapshot() {
+    return this;
+  }
+
+  public boolean search(int key) {
+    PNode node = root;
+    while (node != null) {
+      if (key == node.key) {
+        return true;
+      }
+      node = key < node.key ? node.left : node.right;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // -- Insertion ----------------------------------------------------------------------------------
+
+  //postcondition: a version that also contains key (this one, if it already did)
+  public PersistentRedBlackTree insert(int key) {
+    if (search(key)) {
+      return this;
+    }
+    return new PersistentRedBlackTree(blacken(insert(root, key)), size + 1);
+  }
+
+  private static PNode insert(PNode node, int key) {
+    if (node == null) {
+      return new PNode(RED, null, key, null);
+    }
+    if (key < node.key) {
+      return node.color == BLACK
+          ? balance(insert(node.left, key), node.key, node.right)
+          : new PNode(RED, insert(node.left, key), node.key, node.right);
+    } else {
+      return node.color == BLACK
+          ? balance(node.left, node.key, insert(node.right, key))
+          : new PNode(RED, node.left, node.key, insert(node.right, key));
+    }
+  }
+
+  // -- Deletion -----------------------------------------------------------------------------------
+
+  //postcondition: a version without key (this one, if it didn't contain it)
+  public PersistentRedBlackTree delete(int key) {
+    if (!search(key)) {
+      return this;
+    }
+    return new PersistentRedBlackTree(blacken(delete(root, key)), size - 1);
+  }
+
+  //precondition: key is in the subtree
+  private static PNode delete(PNode node, int key) {
+    if (key < node.key) {
+      // Removing from a black subtree shortens it, so the left side has to be rebalanced
+      return isBlackNode(node.left)
+          ? balanceLeft(delete(node.left, key), node.key, node.right)
+          : new PNode(RED, delete(node.left, key), node.key, node.right);
+    } else if (key > node.key) {
+      return isBlackNode(node.right)
+          ? balanceRight(node.left, node.key, delete(node.right, key))
+          : new PNode(RED, node.left, node.key, delete(node.right, key));
+    } else {
+      return fuse(node.left, node.right);
+    }
+  }
+
+  // Left subtree is one black level short
+  private static PNode balanceLeft(PNode left, int key, PNode right) {
+    if (isRed(left)) {
+      return new PNode(RED, blacken(left), key, right);
+    }
+    if (isBlackNode(right)) {
+      return balance(left, key, redden(right));
+    }
+    if (isRed(right) && isBlackNode(right.left)) {
+      return new PNode(RED,
+          new PNode(BLACK, left, key, right.left.left),
+          right.left.key,
+          balance(right.left.right, right.key, redden(right.right)));
+    }
+    throw new IllegalStateException("Tree is not a red-black tree");
+  }
+
+  // Right subtree is one black level short
+  private static PNode balanceRight(PNode left, int key, PNode right) {
+    if (isRed(right)) {
+      return new PNode(RED, left, key, blacken(right));
+    }
+    if (isBlackNode(left)) {
+      return balance(redden(left), key, right);
+    }
+    if (isRed(left) && isBlackNode(left.right)) {
+      return new PNode(RED,
+          balance(redden(left.left), left.key, left.right.left),
+          left.right.key,
+          new PNode(BLACK, left.right.right, key, right));
+    }
+    throw new IllegalStateException("Tree is not a red-black tree");
+  }
+
+  // Joins the two children of a removed node; every key of left is smaller than every key of right
+  private static PNode fuse(PNode left, PNode right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (isRed(left) && isRed(right)) {
+      PNode middle = fuse(left.right, right.left);
+      if (isRed(middle)) {
+        return new PNode(RED,
+            new PNode(RED, left.left, left.key, middle.left),
+            middle.key,
+            new PNode(RED, middle.right, right.key, right.right));
+      }
+      return new PNode(RED, left.left, left.key, new PNode(RED, middle, right.key, right.right));
+    }
+    if (!isRed(left) && !isRed(right)) {
+      PNode middle = fuse(left.right, right.left);
+      if (isRed(middle)) {
+        return new PNode(RED,
+            new PNode(BLACK, left.left, left.key, middle.left),
+            middle.key,
+            new PNode(BLACK, middle.right, right.key, right.right));
+      }
+      return balanceLeft(left.left, left.key, new PNode(BLACK, middle, right.key, right.right));
+    }
+    if (isRed(right)) {
+      return new PNode(RED, fuse(left, right.left), right.key, right.right);
+    }
+    return new PNode(RED, left.left, left.key, fuse(left.right, right));
+  }
+
+  // -- Helpers for insertion and deletion ---------------------------------------------------------
+
+  // Resolves a red node with a red child directly below a (to be) black node, in all four shapes
+  private static PNode balance(PNode left, int key, PNode right) {
+    if (isRed(left) && isRed(right)) {
+      return new PNode(RED, blacken(left), key, blacken(right));
+    }
+    if (isRed(left) && isRed(left.left)) {
+      return new PNode(RED, blacken(left.left), left.key, new PNode(BLACK, left.right, key, right));
+    }
+    if (isRed(left) && isRed(left.right)) {
+      return new PNode(RED,
+          new PNode(BLACK, left.left, left.key, left.right.left),
+          left.right.key,
+          new PNode(BLACK, left.right.right, key, right));
+    }
+    if (isRed(right) && isRed(right.right)) {
+      return new PNode(RED, new PNode(BLACK, left, key, right.left), right.key, blacken(right.right));
+    }
+    if (isRed(right) && isRed(right.left)) {
+      return new PNode(RED,
+          new PNode(BLACK, left, key, right.left.left),
+          right.left.key,
+          new PNode(BLACK, right.left.right, right.key, right.right));
+    }
+    return new PNode(BLACK, left, key, right);
+  }
+
+  private static PNode blacken(PNode node) {
+    return node == null || node.color == BLACK ? node : new PNode(BLACK, node.left, node.key, node.right);
+  }
+
+  //precondition: node is a black node
+  private static PNode redden(PNode node) {
+    if (!isBlackNode(node)) {
+      throw new IllegalStateException("Tree is not a red-black tree");
+    }
+    return new PNode(RED, node.left, node.key, node.right);
+  }
+
+  private static boolean isRed(PNode node) {
+    return node != null && node.color == RED;
+  }
+
+  // Unlike isBlack in RedBlackTree, a missing node does not count here
+  private static boolean isBlackNode(PNode node) {
+    return node != null && node.color == BLACK;
+  }
+
+  // -- Reading ------------------------------------------------------------------------------------
+
+  //postcondition: action has been called with every key in ascending order
+  public void forEach(IntConsumer action) {
+    forEachInRange(root, Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+  }
+
+  //postcondition: action has been called, in ascending order, with every key k where lo <= k <= hi
+  public void forEachInRange(int lo, int hi, IntConsumer action) {
+    forEachInRange(root, lo, hi, action);
+  }
+
+  // Recursion depth is the height of the tree
+  private static void forEachInRange(PNode node, int lo, int hi, IntConsumer action) {
+    while (node != null) {
+      if (node.key < lo) {
+        node = node.right;
+      } else if (node.key > hi) {
+        node = node.left;
+      } else {
+        forEachInRange(node.left, lo, hi, action);
+        action.accept(node.key);
+        node = node.right;
+      }
+    }
+  }
+
+  //postcondition: number of nodes on the longest path from the root to a leaf
+  public int height() {
+    return height(root);
+  }
+
+  private static int height(PNode node) {
+    return node == null ? 0 : 1 + Math.max(height(node.left), height(node.right));
+  }
+
+  //postcondition: number of black nodes on a path from the root to a leaf
+  public int blackHeight() {
+    int h = 0;
+    for (PNode node = root; node != null; node = node.left) {
+      if (node.color == BLACK) {
+        h++;
+      }
+    }
+    return h;
+  }
+
+  //postcondition: true if the root is black, no red node has a red child and all paths have the same black height
+  public boolean isRedBlack() {
+    return !isRed(root) && checkSubtree(root) >= 0;
+  }
+
+  // Black height of the subtree, or -1 if it breaks rule 4 or 5
+  private static int checkSubtree(PNode node) {
+    if (node == null) {
+      return 0;
+    }
+    if (isRed(node) && (isRed(node.left) || isRed(node.right))) {
+      return -1;
+    }
+    int left = checkSubtree(node.left);
+    int right = checkSubtree(node.right);
+    if (left < 0 || left != right) {
+      return -1;
+    }
+    return left + (node.color == BLACK ? 1 : 0);
+  }
+
+  // -- Shared head for writers --------------------------------------------------------------------
+
+  // The current version of a tree that keeps changing. Writers are serialized; readers call snapshot() and
+  // keep a consistent version for as long as they need it, without ever blocking a writer.
+  public static final class Handle {
+    private volatile PersistentRedBlackTree current = EMPTY;
+
+    public synchronized void insert(int key) {
+      current = current.insert(key);
+    }
+
+    public synchronized void delete(int key) {
+      current = current.delete(key);
+    }
+
+    //postcondition: the current version, in O(1)
+    public PersistentRedBlackTree snapshot() {
+      return current;
+    }
+  }
+
+  private static final class PNode {
+    final boolean color;
+    final PNode left;
+    final int key;
+    final PNode right;
+
+    PNode(boolean color, PNode left, int key, PNode right) {
+      this.color = color;
+      this.left = left;
+      this.key = key;
+      this.right = right;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+//A RedBlackTree over int keys that keeps its nodes in parallel primitive arrays instead of Node objects.
+//Each node is a slot index; key, left, right and parent live in int[] chunks and the color is one bit in a long[] chunk.
+//Chunks are never copied when the tree grows (only the small outer arrays of chunk references are, and those double), and deleted slots
+//are reused through a free list, so a tree with millions of keys is a handful of large arrays instead of millions of objects.
+
+import java.util.Arrays;
+
+public class PrimitiveRedBlackTree extends IndexedRedBlackTree {
+
+  static final int CHUNK_SHIFT = 12;
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int MAX_CHUNKS = Integer.MAX_VALUE >>> CHUNK_SHIFT;
+
+  private int[][] keys = new int[0][];
+  private int[][] lefts = new int[0][];
+  private int[][] rights = new int[0][];
+  private int[][] parents = new int[0][];
+  // One bit per slot, a set bit means BLACK
+  private long[][] colors = new long[0][];
+  // Number of chunks in use; the outer arrays grow geometrically, so they are usually longer than this
+  private int chunkCount;
+
+  // -- Memory footprint ---------------------------------------------------------------------------
+
+  //postcondition: approximate number of heap bytes held by this tree's arrays (assumes compressed references
+  //and 16-byte array headers). For comparison, one Node in RedBlackTree is a 12-byte header plus three ints, three
+  //references, a boolean and a byte, i.e. 40 bytes per key after padding, before counting any GC overhead.
+  public long footprintBytes() {
+    long perChunk = 4 * (16 + 4L * CHUNK_SIZE) + (16 + 8L * (CHUNK_SIZE / 64));
+    long outerArrays = 5 * (16 + 4L * keys.length);
+    return chunkCount * perChunk + outerArrays;
+  }
+
+  //postcondition: footprintBytes() divided by the number of keys (0 for an empty tree)
+  public double bytesPerKey() {
+    return size == 0 ? 0 : (double) footprintBytes() / size;
+  }
+
+  // -- Slot storage -------------------------------------------------------------------------------
+
+  int capacity() {
+    return chunkCount << CHUNK_SHIFT;
+  }
+
+  // Adds one chunk; only the outer arrays of chunk references are copied, never the node data, and those double
+  // when full so building n keys copies O(n / CHUNK_SIZE) references in total
+  void grow() {
+    int chunks = chunkCount;
+    if (chunks == MAX_CHUNKS) {
+      throw new IllegalStateException("Tree is full");
+    }
+    if (chunks == keys.length) {
+      int length = grownLength(chunks, MAX_CHUNKS);
+      keys = Arrays.copyOf(keys, length);
+      lefts = Arrays.copyOf(lefts, length);
+      rights = Arrays.copyOf(rights, length);
+      parents = Arrays.copyOf(parents, length);
+      colors = Arrays.copyOf(colors, length);
+    }
+    keys[chunks] = new int[CHUNK_SIZE];
+    lefts[chunks] = new int[CHUNK_SIZE];
+    rights[chunks] = new int[CHUNK_SIZE];
+    parents[chunks] = new int[CHUNK_SIZE];
+    colors[chunks] = new long[CHUNK_SIZE / 64];
+    chunkCount = chunks + 1;
+  }
+
+  //postcondition: the next length of an outer array of chunk references that is full at length, at most max
+  static int grownLength(int length, int max) {
+    return (int) Math.min(Math.max(4L, 2L * length), max);
+  }
+
+  int key(int node) {
+    return keys[node >>> CHUNK_SHIFT][node & CHUNK_MASK];
+  }
+
+  void setKey(int node, int key) {
+    keys[node >>> CHUNK_SHIFT][node & CHUNK_MASK] = key;
+  }
+
+  int left(int node) {
+    return lefts[node >>> CHUNK_SHIFT][node & CHUNK_MASK];
+  }
+
+  void setLeft(int node, int left) {
+    lefts[node >>> CHUNK_SHIFT][node & CHUNK_MASK] = left;
+  }
+
+  int right(int node) {
+    return rights[node >>> CHUNK_SHIFT][node & CHUNK_MASK];
+  }
+
+  void setRight(int node, int right) {
+    rights[node >>> CHUNK_SHIFT][node & CHUNK_MASK] = right;
+  }
+
+  int parent(int node) {
+    return parents[node >>> CHUNK_SHIFT][node & CHUNK_MASK];
+  }
+
+  void setParent(int node, int parent) {
+    parents[node >>> CHUNK_SHIFT][node & CHUNK_MASK] = parent;
+  }
+
+  boolean color(int node) {
+    int offset = node & CHUNK_MASK;
+    return (colors[node >>> CHUNK_SHIFT][offset >>> 6] & (1L << offset)) != 0;
+  }
+
+  void setColor(int node, boolean color) {
+    int offset = node & CHUNK_MASK;
+    long[] chunk = colors[node >>> CHUNK_SHIFT];
+    if (color == BLACK) {
+      chunk[offset >>> 6] |= 1L << offset;
+    } else {
+      chunk[offset >>> 6] &= ~(1L << offset);
+    }
+  }
+}
@@ -1,16 +1,64 @@
 //The following is one possible RedBlackTree implementation.
 //Much of this code is from Sven Woltmann's public GitHub repository. Thank you Mr. Woltmann for making your code available for educational purposes.
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class RedBlackTree{
 
   static final boolean RED = false;
   static final boolean BLACK = true;
+  //Returned by the nearest-key queries (floor, ceiling, first, pollFirst, ...) when there is no such key. It lies
+  //outside the int range, so it never collides with a key.
+  public static final long NOT_FOUND = Long.MIN_VALUE;
   private Node root;
-  private NilNode terminator = new NilNode();
+  // The one black stand-in a deleted black leaf leaves behind until the delete fixup is done; shared by all deletes
+  // so they don't allocate
+  private final NilNode terminator = new NilNode();
+  // Nodes freed by delete, chained through their right child, that insert hands out again
+  private Node recycledNodes;
+  private int recycledNodeCount;
+  private int recycledNodeLimit;
+  // Black height kept up to date in O(1) by every change while stats caching is on, -1 while it's off
+  private int cachedBlackHeight = -1;
+  // Counters, or null while metrics are off
+  private TreeMetrics metrics;
+  // Steps of the fixup in progress, only counted while metrics are on
+  private int fixupDepth;
+  // Whether a key can occur more than once (see multiset())
+  private final boolean multiset;
+
+  public RedBlackTree() {
+    this(false);
+  }
+
+  private RedBlackTree(boolean multiset) {
+    this.multiset = multiset;
+  }
+
+  //postcondition: an empty tree in which a key can occur more than once. Each node counts the occurrences of its
+  //key: inserting a present key and deleting a key that occurs more than once only change that count and the sizes
+  //above it, without any rotation or recoloring. size, rank, select, countInRange and iteration count every
+  //occurrence.
+  public static RedBlackTree multiset() {
+    return new RedBlackTree(true);
+  }
+
+  public boolean isMultiset() {
+    return multiset;
+  }
   
   public Node search(int key) {
+    if (metrics != null) {
+      return countedSearch(key);
+    }
     Node node = root;
     while (node != null) {
       if (key == node.key) {
@@ -25,11 +73,52 @@ public class RedBlackTree{
     return null;
   }
 
+  // Raw access for wrappers that walk the nodes themselves (see ConcurrentRedBlackTree)
+  Node root() {
+    return root;
+  }
+
+  // Wraps a detached subtree whose colors, sizes and heights are already valid (see TreeSnapshot)
+  static RedBlackTree withRoot(Node root) {
+    RedBlackTree tree = new RedBlackTree();
+    tree.root = root;
+    return tree;
+  }
+
   // -- Insertion ----------------------------------------------------------------------------------
 
 
+  //postcondition: key is in the tree; in a multiset, one more occurrence of it
+  //throws IllegalArgumentException if key is already there and the tree is not a multiset (see insertIfAbsent)
   public void insert(int key) {
-    Node node = root;
+    int sizeBefore = size();
+    Node node = findOrInsertBelow(root, key);
+    if (size() == sizeBefore) {
+      if (!multiset) {
+        throw new IllegalArgumentException("BST already contains a node with key " + key);
+      }
+      addOccurrence(node);
+    }
+  }
+
+  //postcondition: key is in the tree; returns true if it was added and false if it was already there. Never throws
+  //on duplicates, and leaves the count of a present key in a multiset alone.
+  public boolean insertIfAbsent(int key) {
+    int sizeBefore = size();
+    findOrInsertBelow(root, key);
+    return size() != sizeBefore;
+  }
+
+  //postcondition: key is in the tree; returns its node, which insertion creates if needed (a present key, and in a
+  //multiset its count, is left as it is)
+  public Node upsert(int key) {
+    return findOrInsertBelow(root, key);
+  }
+
+  // Finds the node holding key in the subtree rooted at start, which has to be a subtree the key belongs in,
+  // inserting a new node for it if there is none. Whether it was inserted shows in size().
+  private Node findOrInsertBelow(Node start, int key) {
+    Node node = start;
     Node parent = null;
 
     // Traverse the tree to the left or right depending on the key
@@ -40,12 +129,12 @@ public class RedBlackTree{
       } else if (key > node.key) {
         node = node.right;
       } else {
-        throw new IllegalArgumentException("BST already contains a node with key " + key);
+        return node;
       }
     }
 
     // Insert new node
-    Node newNode = new Node(key);
+    Node newNode = obtainNode(key);
     newNode.color = RED;
     if (parent == null) {
       root = newNode;
@@ -57,19 +146,31 @@ public class RedBlackTree{
     newNode.parent = parent;
 
     fixRedBlackPropertiesAfterInsert(newNode);
+    countFixup(TreeMetrics.INSERT);
+
+    // Every ancestor's subtree gained a node (and maybe a level); rotations kept the nodes they moved up to date
+    updateAugmentedFieldsUpFrom(newNode);
+    return newNode;
   }
 
   private void fixRedBlackPropertiesAfterInsert(Node node) {
+    countFixupStep();
     Node parent = node.parent;
 
     // Case 1: Parent is null, we've reached the root, the end of the recursion
     if (parent == null) {
+      countCase(TreeMetrics.INSERT, 1);
+      // A red root (a new one, or one that case 3 recolored) turning black adds a black level to every path
+      if (node.color == RED) {
+        adjustCachedBlackHeight(1);
+      }
       node.color = BLACK;
       return;
     }
 
     // Parent is black --> nothing to do
     if (parent.color == BLACK) {
+      countCase(TreeMetrics.INSERT, 2);
       return;
     }
 
@@ -81,6 +182,7 @@ public class RedBlackTree{
 
     // Case 3: Uncle is red -> recolor parent, grandparent and uncle
     if (uncle != null && uncle.color == RED) {
+      countCase(TreeMetrics.INSERT, 3);
       parent.color = BLACK;
       grandparent.color = RED;
       uncle.color = BLACK;
@@ -94,6 +196,7 @@ public class RedBlackTree{
     else if (parent == grandparent.left) {
       // Case 4a: Uncle is black and node is left->right "inner child" of its grandparent
       if (node == parent.right) {
+        countCase(TreeMetrics.INSERT, 4);
         rotateLeft(parent);
 
         // Let "parent" point to the new root node of the rotated sub-tree.
@@ -102,6 +205,7 @@ public class RedBlackTree{
       }
 
       // Case 5a: Uncle is black and node is left->left "outer child" of its grandparent
+      countCase(TreeMetrics.INSERT, 5);
       rotateRight(grandparent);
 
       // Recolor original parent and grandparent
@@ -113,6 +217,7 @@ public class RedBlackTree{
     else {
       // Case 4b: Uncle is black and node is right->left "inner child" of its grandparent
       if (node == parent.left) {
+        countCase(TreeMetrics.INSERT, 4);
         rotateRight(parent);
 
         // Let "parent" point to the new root node of the rotated sub-tree.
@@ -121,6 +226,7 @@ public class RedBlackTree{
       }
 
       // Case 5b: Uncle is black and node is right->right "outer child" of its grandparent
+      countCase(TreeMetrics.INSERT, 5);
       rotateLeft(grandparent);
 
       // Recolor original parent and grandparent
@@ -142,8 +248,52 @@ public class RedBlackTree{
 
   // -- Deletion -----------------------------------------------------------------------------------
 
+  //postcondition: key is not in the tree; in a multiset, it occurs once less
   public void delete(int key) {
-    Node node = root;
+    Node node = findBelow(root, key);
+
+    // Node not found?
+    if (node == null) {
+      return;
+    }
+
+    if (node.count > 1) {
+      removeOccurrence(node);
+    } else {
+      deleteNode(node);
+    }
+  }
+
+  //postcondition: no occurrence of key is left; returns how many there were
+  public int deleteAllOccurrences(int key) {
+    Node node = findBelow(root, key);
+    if (node == null) {
+      return 0;
+    }
+    int count = node.count;
+    deleteNode(node);
+    return count;
+  }
+
+  //postcondition: number of occurrences of key (0 or 1 unless the tree is a multiset)
+  public int count(int key) {
+    Node node = findBelow(root, key);
+    return node == null ? 0 : node.count;
+  }
+
+  // A multiset only counts duplicates: the shape stays the same, only the sizes on the path to the root change
+  private static void addOccurrence(Node node) {
+    node.count++;
+    updateAugmentedFieldsUpFrom(node);
+  }
+
+  private static void removeOccurrence(Node node) {
+    node.count--;
+    updateAugmentedFieldsUpFrom(node);
+  }
+
+  private Node findBelow(Node start, int key) {
+    Node node = start;
 
     // Find the node to be deleted
     while (node != null && node.key != key) {
@@ -154,21 +304,26 @@ public class RedBlackTree{
         node = node.right;
       }
     }
+    return node;
+  }
 
-    // Node not found?
-    if (node == null) {
-      return;
-    }
-
-    // At this point, "node" is the node to be deleted
+  // Deletes the given node from the tree. Returns a node that is still in the tree close to where the
+  // deleted one was (or null if the tree is now empty), to start the next search of a batch from.
+  private Node deleteNode(Node node) {
 
     // In this variable, we'll store the node at which we're going to start to fix the R-B
     // properties after deleting a node.
     Node movedUpNode;
     boolean deletedNodeColor;
+    // The lowest node whose subtree loses a node
+    Node removedNodesParent;
+    // The Node object that leaves the tree, which is not always the one that held the key
+    Node removedNode;
 
     // Node has zero or one child
     if (node.left == null || node.right == null) {
+      removedNode = node;
+      removedNodesParent = node.parent;
       movedUpNode = deleteNodeWithZeroOrOneChild(node);
       deletedNodeColor = node.color;
     }
@@ -180,20 +335,29 @@ public class RedBlackTree{
 
       // Copy inorder successor's data to current node (keep its color!)
       node.key = inOrderSuccessor.key;
+      node.count = inOrderSuccessor.count;
 
       // Delete inorder successor just as we would delete a node with 0 or 1 child
+      removedNode = inOrderSuccessor;
+      removedNodesParent = inOrderSuccessor.parent;
       movedUpNode = deleteNodeWithZeroOrOneChild(inOrderSuccessor);
       deletedNodeColor = inOrderSuccessor.color;
     }
 
     if (deletedNodeColor == BLACK) {
       fixRedBlackPropertiesAfterDelete(movedUpNode);
+      countFixup(TreeMetrics.DELETE);
 
       // Remove the temporary NIL node
-      if (movedUpNode.getClass() == NilNode.class) {
-        replaceParentsChild(movedUpNode.parent, movedUpNode, null);
+      if (movedUpNode == terminator) {
+        replaceParentsChild(terminator.parent, terminator, null);
+        terminator.parent = null;
       }
     }
+
+    updateAugmentedFieldsUpFrom(removedNodesParent);
+    recycle(removedNode);
+    return removedNodesParent != null ? removedNodesParent : root;
   }
 
   private Node deleteNodeWithZeroOrOneChild(Node node) {
@@ -213,7 +377,7 @@ public class RedBlackTree{
     // * node is red --> just remove it
     // * node is black --> replace it by a temporary NIL node (needed to fix the R-B rules)
     else {
-      Node newChild = node.color == BLACK ? new NilNode() : null;
+      Node newChild = node.color == BLACK ? terminator : null;
       replaceParentsChild(node.parent, node, newChild);
       return newChild;
     }
@@ -227,10 +391,17 @@ public class RedBlackTree{
   }
 
   private void fixRedBlackPropertiesAfterDelete(Node node) {
+    countFixupStep();
     // Case 1: Examined node is root, end of recursion
     if (node == root) {
-      // Uncomment the following line if you want to enforce black roots (rule 2):
-      // node.color = BLACK;
+      countCase(TreeMetrics.DELETE, 1);
+      // A black node here means the missing black level was carried all the way up, so every path lost one; a red
+      // root (the child of a deleted black root) being recolored makes up for the black node that was deleted
+      if (node.color == BLACK) {
+        adjustCachedBlackHeight(-1);
+      }
+      // Enforce black roots (rule 2), which isRedBlack() checks for
+      node.color = BLACK;
       return;
     }
 
@@ -238,6 +409,7 @@ public class RedBlackTree{
 
     // Case 2: Red sibling
     if (sibling.color == RED) {
+      countCase(TreeMetrics.DELETE, 2);
       handleRedSibling(node, sibling);
       sibling = getSibling(node); // Get new sibling for fall-through to cases 3-6
     }
@@ -248,11 +420,13 @@ public class RedBlackTree{
 
       // Case 3: Black sibling with two black children + red parent
       if (node.parent.color == RED) {
+        countCase(TreeMetrics.DELETE, 3);
         node.parent.color = BLACK;
       }
 
       // Case 4: Black sibling with two black children + black parent
       else {
+        countCase(TreeMetrics.DELETE, 4);
         fixRedBlackPropertiesAfterDelete(node.parent);
       }
     }
@@ -282,11 +456,13 @@ public class RedBlackTree{
     // Case 5: Black sibling with at least one red child + "outer nephew" is black
     // --> Recolor sibling and its child, and rotate around sibling
     if (nodeIsLeftChild && isBlack(sibling.right)) {
+      countCase(TreeMetrics.DELETE, 5);
       sibling.left.color = BLACK;
       sibling.color = RED;
       rotateRight(sibling);
       sibling = node.parent.right;
     } else if (!nodeIsLeftChild && isBlack(sibling.left)) {
+      countCase(TreeMetrics.DELETE, 5);
       sibling.right.color = BLACK;
       sibling.color = RED;
       rotateLeft(sibling);
@@ -297,6 +473,7 @@ public class RedBlackTree{
 
     // Case 6: Black sibling with at least one red child + "outer nephew" is red
     // --> Recolor sibling + parent + sibling's child, and rotate around parent
+    countCase(TreeMetrics.DELETE, 6);
     sibling.color = node.parent.color;
     node.parent.color = BLACK;
     if (nodeIsLeftChild) {
@@ -319,21 +496,72 @@ public class RedBlackTree{
     }
   }
 
-  private boolean isBlack(Node node) {
+  private static boolean isBlack(Node node) {
     return node == null || node.color == BLACK;
   }
 
+  // -- Node recycling -----------------------------------------------------------------------------
+
+  //precondition: maxNodes >= 0
+  //postcondition: up to maxNodes nodes freed by delete are kept and handed out again by insert, so steady insert and
+  //delete churn allocates nothing. 0, the default, turns recycling off and drops the kept nodes.
+  //With recycling on, a Node returned by search() must not be used once its key is deleted: it may come back
+  //holding a different key.
+  public void setRecycledNodeLimit(int maxNodes) {
+    if (maxNodes < 0) {
+      throw new IllegalArgumentException("maxNodes must not be negative, but is " + maxNodes);
+    }
+    recycledNodeLimit = maxNodes;
+    while (recycledNodeCount > maxNodes) {
+      recycledNodes = recycledNodes.right;
+      recycledNodeCount--;
+    }
+  }
+
+  // A fresh-looking red node holding key, recycled if one is available
+  private Node obtainNode(int key) {
+    Node node = recycledNodes;
+    if (node == null) {
+      countNodeAllocation();
+      return new Node(key);
+    }
+    recycledNodes = node.right;
+    recycledNodeCount--;
+    node.key = key;
+    node.count = 1;
+    node.right = null;
+    node.color = RED;
+    node.size = 1;
+    node.height = 1;
+    return node;
+  }
+
+  // Keeps a node that just left the tree, if there's room; its links are cleared so it pins nothing
+  private void recycle(Node node) {
+    if (recycledNodeCount >= recycledNodeLimit) {
+      return;
+    }
+    node.left = null;
+    node.parent = null;
+    node.right = recycledNodes;
+    recycledNodes = node;
+    recycledNodeCount++;
+  }
+
   // -- All leaves will be connected to a NilNode (Note that these are black)
   private static class NilNode extends Node {
     private NilNode() {
       super(0);
       this.color = BLACK;
+      this.size = 0;
+      this.height = 0;
     }
   }
 
   // -- Helpers for insertion and deletion ---------------------------------------------------------
 
   private void rotateRight(Node node) {
+    countRotation(false);
     Node parent = node.parent;
     Node leftChild = node.left;
 
@@ -345,10 +573,15 @@ public class RedBlackTree{
     leftChild.right = node;
     node.parent = leftChild;
 
+    // node is now below leftChild, so it has to be recomputed first
+    updateAugmentedFields(node);
+    updateAugmentedFields(leftChild);
+
     replaceParentsChild(parent, node, leftChild);
   }
 
   private void rotateLeft(Node node) {
+    countRotation(true);
     Node parent = node.parent;
     Node rightChild = node.right;
 
@@ -360,6 +593,10 @@ public class RedBlackTree{
     rightChild.left = node;
     node.parent = rightChild;
 
+    // node is now below rightChild, so it has to be recomputed first
+    updateAugmentedFields(node);
+    updateAugmentedFields(rightChild);
+
     replaceParentsChild(parent, node, rightChild);
   }
 
@@ -379,311 +616,1089 @@ public class RedBlackTree{
     }
   }
 
-  
-  
-  
-   //------- printing
-  public static void showTrunks(Trunk p)
-  {
-      if (p == null) {
-          return;
+  // Recomputes a node's subtree size and height from its children, which have to be up to date already
+  static void updateAugmentedFields(Node node) {
+    node.size = node.count + sizeOf(node.left) + sizeOf(node.right);
+    node.height = (byte) (1 + Math.max(heightOf(node.left), heightOf(node.right)));
+  }
+
+  // Walks up to the root; any node a rotation left with stale fields is still an ancestor of the changed spot
+  private static void updateAugmentedFieldsUpFrom(Node node) {
+    for (; node != null; node = node.parent) {
+      updateAugmentedFields(node);
+    }
+  }
+
+  private static int sizeOf(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static int heightOf(Node node) {
+    return node == null ? 0 : node.height;
+  }
+
+  // -- Metrics ------------------------------------------------------------------------------------
+  // Every hook below is a single null check while metrics are off.
+
+  //postcondition: from now on the tree counts its rotations, fixup cases and depths, search comparisons and node
+  //allocations in metrics; null turns counting off. One TreeMetrics can be shared by several trees.
+  public void setMetrics(TreeMetrics metrics) {
+    this.metrics = metrics;
+    fixupDepth = 0;
+  }
+
+  //postcondition: the metrics set by setMetrics, or null
+  public TreeMetrics metrics() {
+    return metrics;
+  }
+
+  // Same walk as search, counting the nodes it compares the key with
+  private Node countedSearch(int key) {
+    Node node = root;
+    int comparisons = 0;
+    while (node != null) {
+      comparisons++;
+      if (key == node.key) {
+        break;
       }
+      node = key < node.key ? node.left : node.right;
+    }
+    metrics.countSearch(comparisons);
+    return node;
+  }
 
-      showTrunks(p.prev);
-      System.out.print(p.str);
+  private void countRotation(boolean left) {
+    if (metrics != null) {
+      metrics.countRotation(left);
+    }
   }
 
-  public void printTree(){
-      printTree(root, null, false);
+  private void countCase(int operation, int fixupCase) {
+    if (metrics != null) {
+      metrics.countCase(operation, fixupCase);
+    }
   }
 
-  private void printTree(Node root, Trunk prev, boolean isLeft)
-  {
-      if (root == null) {
-    	  System.out.println(" " + "NIL "+"B");
-          return;
+  private void countFixupStep() {
+    if (metrics != null) {
+      fixupDepth++;
+    }
+  }
+
+  // Reports the fixup that just finished
+  private void countFixup(int operation) {
+    if (metrics != null) {
+      metrics.countFixup(operation, fixupDepth);
+      fixupDepth = 0;
+    }
+  }
+
+  private void countNodeAllocation() {
+    if (metrics != null) {
+      metrics.countNodeAllocation();
+    }
+  }
+
+  // -- Order statistics ---------------------------------------------------------------------------
+
+  //postcondition: number of keys in the tree, in O(1)
+  public int size() {
+    return sizeOf(root);
+  }
+
+  //postcondition: number of keys strictly smaller than key, in O(log n)
+  public int rank(int key) {
+    int rank = 0;
+    Node node = root;
+    while (node != null) {
+      if (key <= node.key) {
+        node = node.left;
+      } else {
+        rank += sizeOf(node.left) + node.count;
+        node = node.right;
       }
+    }
+    return rank;
+  }
 
-      String prev_str = "    ";
-      Trunk trunk = new Trunk(prev, prev_str);
+  //precondition: 0 <= k < size()
+  //postcondition: the k-th smallest key (k = 0 is the minimum), in O(log n)
+  public int select(int k) {
+    if (k < 0 || k >= size()) {
+      throw new IllegalArgumentException("Rank " + k + " is out of range for a tree of size " + size());
+    }
+    Node node = root;
+    while (true) {
+      int leftSize = sizeOf(node.left);
+      if (k < leftSize) {
+        node = node.left;
+      } else if (k >= leftSize + node.count) {
+        k -= leftSize + node.count;
+        node = node.right;
+      } else {
+        return node.key;
+      }
+    }
+  }
 
-      printTree(root.right, trunk, true);
+  //postcondition: number of keys k with lo <= k <= hi, in O(log n)
+  public int countInRange(int lo, int hi) {
+    if (lo > hi) {
+      return 0;
+    }
+    return countAtMost(hi) - rank(lo);
+  }
 
-      if (prev == null) {
-          trunk.str = "---";
+  // Number of keys smaller than or equal to key
+  private int countAtMost(int key) {
+    int count = 0;
+    Node node = root;
+    while (node != null) {
+      if (key < node.key) {
+        node = node.left;
+      } else {
+        count += sizeOf(node.left) + node.count;
+        node = node.right;
       }
-      else if (isLeft) {
-          trunk.str = ".---";
-          prev_str = "   |";
+    }
+    return count;
+  }
+
+  // -- Nearest keys -------------------------------------------------------------------------------
+  // All of these run in O(log n), return a key or NOT_FOUND, and never hand out a Node.
+
+  //postcondition: the largest key <= key, or NOT_FOUND
+  public long floor(int key) {
+    return keyOf(floorNode(key));
+  }
+
+  //postcondition: the smallest key >= key, or NOT_FOUND
+  public long ceiling(int key) {
+    return keyOf(ceilingNode(key));
+  }
+
+  //postcondition: the largest key < key, or NOT_FOUND
+  public long lower(int key) {
+    return key == Integer.MIN_VALUE ? NOT_FOUND : keyOf(floorNode(key - 1));
+  }
+
+  //postcondition: the smallest key > key, or NOT_FOUND
+  public long higher(int key) {
+    return key == Integer.MAX_VALUE ? NOT_FOUND : keyOf(ceilingNode(key + 1));
+  }
+
+  //postcondition: the smallest key, or NOT_FOUND if the tree is empty
+  public long first() {
+    return keyOf(firstNode());
+  }
+
+  //postcondition: the largest key, or NOT_FOUND if the tree is empty
+  public long last() {
+    return keyOf(lastNode());
+  }
+
+  //postcondition: removes and returns the smallest key (one occurrence of it in a multiset), or NOT_FOUND if the
+  //tree is empty
+  public long pollFirst() {
+    return poll(firstNode());
+  }
+
+  //postcondition: removes and returns the largest key (one occurrence of it in a multiset), or NOT_FOUND if the
+  //tree is empty
+  public long pollLast() {
+    return poll(lastNode());
+  }
+
+  private long poll(Node node) {
+    if (node == null) {
+      return NOT_FOUND;
+    }
+    int key = node.key;
+    if (node.count > 1) {
+      removeOccurrence(node);
+    } else {
+      deleteNode(node);
+    }
+    return key;
+  }
+
+  private static long keyOf(Node node) {
+    return node == null ? NOT_FOUND : node.key;
+  }
+
+  // -- In-order iteration -------------------------------------------------------------------------
+  // All of these walk the parent pointers, so they need no stack and allocate nothing per key.
+
+  //postcondition: action has been called with every key in ascending order
+  public void forEach(IntConsumer action) {
+    for (Node node = firstNode(); node != null; node = successor(node)) {
+      acceptOccurrences(node, action);
+    }
+  }
+
+  //postcondition: action has been called with every key in descending order
+  public void forEachDescending(IntConsumer action) {
+    for (Node node = lastNode(); node != null; node = predecessor(node)) {
+      acceptOccurrences(node, action);
+    }
+  }
+
+  //postcondition: action has been called, in ascending order, with every key k where lo <= k <= hi.
+  //Runs in O(log n + k) for k reported keys.
+  public void forEachInRange(int lo, int hi, IntConsumer action) {
+    for (Node node = ceilingNode(lo); node != null && node.key <= hi; node = successor(node)) {
+      acceptOccurrences(node, action);
+    }
+  }
+
+  //postcondition: same as forEachInRange, but in descending order
+  public void forEachInRangeDescending(int lo, int hi, IntConsumer action) {
+    for (Node node = floorNode(hi); node != null && node.key >= lo; node = predecessor(node)) {
+      acceptOccurrences(node, action);
+    }
+  }
+
+  // A key is reported once per occurrence
+  private static void acceptOccurrences(Node node, IntConsumer action) {
+    for (int i = node.count; i > 0; i--) {
+      action.accept(node.key);
+    }
+  }
+
+  //postcondition: a new cursor that is not positioned yet; any insert or delete invalidates it
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  // A reusable position in the tree that can move forwards and backwards one key at a time.
+  // Typical use: for (boolean ok = c.seekCeiling(lo); ok && c.key() <= hi; ok = c.next()) { ... }
+  public final class Cursor {
+    private Node current;
+
+    private Cursor() {
+    }
+
+    //postcondition: positioned on the smallest key; false if the tree is empty
+    public boolean seekFirst() {
+      current = firstNode();
+      return current != null;
+    }
+
+    //postcondition: positioned on the largest key; false if the tree is empty
+    public boolean seekLast() {
+      current = lastNode();
+      return current != null;
+    }
+
+    //postcondition: positioned on the smallest key >= key; false if there is none
+    public boolean seekCeiling(int key) {
+      current = ceilingNode(key);
+      return current != null;
+    }
+
+    //postcondition: positioned on the largest key <= key; false if there is none
+    public boolean seekFloor(int key) {
+      current = floorNode(key);
+      return current != null;
+    }
+
+    //postcondition: moved to the next larger key; false (and no longer positioned) if there is none
+    public boolean next() {
+      current = current == null ? null : successor(current);
+      return current != null;
+    }
+
+    //postcondition: moved to the next smaller key; false (and no longer positioned) if there is none
+    public boolean previous() {
+      current = current == null ? null : predecessor(current);
+      return current != null;
+    }
+
+    public boolean isPositioned() {
+      return current != null;
+    }
+
+    //precondition: isPositioned()
+    public int key() {
+      if (current == null) {
+        throw new IllegalStateException("Cursor is not positioned on a key");
       }
-      else {
-          trunk.str = "`---";
-          prev.str = prev_str;
+      return current.key;
+    }
+
+    //precondition: isPositioned()
+    //postcondition: occurrences of key(); the cursor visits each distinct key once
+    public int count() {
+      if (current == null) {
+        throw new IllegalStateException("Cursor is not positioned on a key");
       }
+      return current.count;
+    }
+  }
 
-      showTrunks(trunk);
-      System.out.println(" " + root.key+(root.color==BLACK ? "B" : "R"));
+  private Node firstNode() {
+    return root == null ? null : findMinimum(root);
+  }
 
-      if (prev != null) {
-          prev.str = prev_str;
+  private Node lastNode() {
+    Node node = root;
+    while (node != null && node.right != null) {
+      node = node.right;
+    }
+    return node;
+  }
+
+  // Smallest node with a key >= key, or null
+  private Node ceilingNode(int key) {
+    Node node = root;
+    Node candidate = null;
+    while (node != null) {
+      if (key == node.key) {
+        return node;
+      } else if (key < node.key) {
+        candidate = node;
+        node = node.left;
+      } else {
+        node = node.right;
       }
-      trunk.str = "   |";
+    }
+    return candidate;
+  }
 
-      printTree(root.left, trunk, false);
+  // Largest node with a key <= key, or null
+  private Node floorNode(int key) {
+    Node node = root;
+    Node candidate = null;
+    while (node != null) {
+      if (key == node.key) {
+        return node;
+      } else if (key > node.key) {
+        candidate = node;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return candidate;
   }
-  
-  
-  
-  //---- Your part:
-  // This should check for the four rules that ensure the tree is a Red Black Tree.
-  // 1 Every node is either red or black.-unnecessary color is an attribute of node
-  // 2 The root is black.-necessary
-  // 3 Every leaf (nil) is black.-done
-  // 4 If a node is red, then both its children are black.-done
-  // 5 For each node, all paths from the node to descendant leaves contain the same number of black nodes.
-  // To receive full credit you must explicitly check for each property! You may not assume anything based on the above implementation (which does ensure all these rules are followed)
-  // you may wish to add some helper functions here.
-  
-//precondition: root is not null
-//postcondition:returns true if tree is a red black tree and false if not
-  public boolean isRedBlack() {
-    boolean is=true;
-    // 2 The root is black.-necessary
-    if(isBlack(root)==true){
-      System.out.println("blackroot rule true");
-  // 4 If a node is red, then both its children are black.
-  Node n=root;
 
-      if(checkChildren(n)){
-        is=true;
-      }else{
-        return false;
+  private static Node successor(Node node) {
+    if (node.right != null) {
+      node = node.right;
+      while (node.left != null) {
+        node = node.left;
       }
-      
-      System.out.println("red has black children rule true");
+      return node;
+    }
+    // Climb until we come up from a left child
+    Node parent = node.parent;
+    while (parent != null && node == parent.right) {
+      node = parent;
+      parent = parent.parent;
+    }
+    return parent;
+  }
 
-  // 5 For each node, all paths from the node to descendant leaves contain the same number of black nodes.
-  n=root;
-  while (n!=null){    
-    if(blackHeight(n.left)==blackHeight(n.right)){
-      is=true;
-  System.out.println("equal black height true");
-    }else{
-      System.out.println("left"+blackHeight(n.left)+"right"+blackHeight(n.right));
-      System.out.println("while loop ended inside");
-      return false;
-    }
-    if(n.left!=null&& n.right!=null){
-      if(equalBlackHeight(n.left)){
-        n=n.right;
-      }else{
-        System.out.println("left"+blackHeight(n.left)+"right"+blackHeight(n.right));
-        System.out.println("while loop ended inside helper");
-        return false;
+  private static Node predecessor(Node node) {
+    if (node.left != null) {
+      node = node.left;
+      while (node.right != null) {
+        node = node.right;
       }
-    }else if(n.left!=null){
-      n=n.left;
-    }else if(n.right!=null){
-      n=n.right;
-    }else{
-      n=null;
+      return node;
+    }
+    // Climb until we come up from a right child
+    Node parent = node.parent;
+    while (parent != null && node == parent.left) {
+      node = parent;
+      parent = parent.parent;
     }
+    return parent;
   }
-  System.out.println("while loop ended");
 
-    }else{
-      return false;
+  // -- Batch lookups ------------------------------------------------------------------------------
+  // A single search waits for every node load before it knows where to go next. These walk LOOKUP_LANES searches
+  // down the tree side by side, so the loads of different keys are independent and their cache misses overlap.
+  // A batch that is in ascending order and dense shares path prefixes instead: each search starts from the node the
+  // previous one ended at (see climbToCover). Neither path allocates.
+
+  private static final int LOOKUP_LANES = 4;
+  // An ascending batch takes the finger path if the tree holds at most this many keys per batch key in the range
+  // the batch spans. Beyond that the finger climbs most of the way to the root anyway and the lanes are faster.
+  private static final int FINGER_SPREAD = 8;
+
+  //precondition: results.length >= keys.length
+  //postcondition: results[i] is the node of keys[i], or null if keys[i] is not in the tree
+  public void searchAll(int[] keys, Node[] results) {
+    if (results.length < keys.length) {
+      throw new IllegalArgumentException("Room for " + results.length + " results, but " + keys.length + " keys");
     }
+    searchAll(keys, results, null);
+  }
 
-	  return is;
+  //postcondition: bit i of found is set if keys[i] is in the tree and cleared if it isn't (other bits are left
+  //alone); true if every key is in the tree
+  public boolean containsAll(int[] keys, BitSet found) {
+    return searchAll(keys, null, found) == keys.length;
   }
 
-//isRed Black Helper functions
-  private Boolean equalBlackHeight(Node n){
-    if(blackHeight(n.left)==blackHeight(n.right)){
-      
-  System.out.println("equal black height true");
-      return true;
-    }else{
-      System.out.println("equal black height false");
-      return false;
+  // Reports every result to results or found, whichever isn't null; returns how many keys were found
+  private int searchAll(int[] keys, Node[] results, BitSet found) {
+    if (metrics != null || root == null) {
+      // Counted one by one, so the comparisons per search stay meaningful
+      int hits = 0;
+      for (int i = 0; i < keys.length; i++) {
+        hits += report(i, search(keys[i]), results, found);
+      }
+      return hits;
     }
-    //return n;
+    boolean dense = isAscending(keys) && keys.length > 0
+        && countInRange(keys[0], keys[keys.length - 1]) <= (long) FINGER_SPREAD * keys.length;
+    return dense ? searchAscending(keys, results, found) : searchInterleaved(keys, results, found);
   }
-     
-  
-  //checks that if a node is red both its children are black
-  private boolean checkChildren(Node n){
-    boolean check=false;
-  if (n==null){
-  return true;
-}
-    if(isBlack(n)==false){//is red
-      if(isBlack(n.left)&&isBlack(n.right)){
-        check= true;
-      }else{
-        return false;
+
+  private int searchInterleaved(int[] keys, Node[] results, BitSet found) {
+    int hits = 0;
+    int i = 0;
+    for (; i + LOOKUP_LANES <= keys.length; i += LOOKUP_LANES) {
+      int k0 = keys[i];
+      int k1 = keys[i + 1];
+      int k2 = keys[i + 2];
+      int k3 = keys[i + 3];
+      Node n0 = root;
+      Node n1 = root;
+      Node n2 = root;
+      Node n3 = root;
+      // A lane stops once it has found its key or fallen off the tree
+      boolean moving = true;
+      while (moving) {
+        moving = false;
+        if (n0 != null && n0.key != k0) {
+          n0 = k0 < n0.key ? n0.left : n0.right;
+          moving = true;
+        }
+        if (n1 != null && n1.key != k1) {
+          n1 = k1 < n1.key ? n1.left : n1.right;
+          moving = true;
+        }
+        if (n2 != null && n2.key != k2) {
+          n2 = k2 < n2.key ? n2.left : n2.right;
+          moving = true;
+        }
+        if (n3 != null && n3.key != k3) {
+          n3 = k3 < n3.key ? n3.left : n3.right;
+          moving = true;
+        }
+      }
+      hits += report(i, n0, results, found);
+      hits += report(i + 1, n1, results, found);
+      hits += report(i + 2, n2, results, found);
+      hits += report(i + 3, n3, results, found);
+    }
+    for (; i < keys.length; i++) {
+      hits += report(i, findBelow(root, keys[i]), results, found);
+    }
+    return hits;
+  }
+
+  private int searchAscending(int[] keys, Node[] results, BitSet found) {
+    int hits = 0;
+    Node finger = root;
+    for (int i = 0; i < keys.length; i++) {
+      int key = keys[i];
+      Node node = climbToCover(finger, key);
+      // A miss leaves the finger at the last node it compared with
+      while (node != null && node.key != key) {
+        finger = node;
+        node = key < node.key ? node.left : node.right;
+      }
+      if (node != null) {
+        finger = node;
       }
-    }else{
-      check= true;
+      hits += report(i, node, results, found);
     }
+    return hits;
+  }
 
-    //if(n.left!=null && n.right!=null){
-    if(check==true){
-      if(checkChildren(n.left) && checkChildren(n.right)){
-       // System.out.println("children checked returned true");
-        return true;
-      }else{
-        System.out.println("children checked returned false");
+  private static boolean isAscending(int[] keys) {
+    for (int i = 1; i < keys.length; i++) {
+      if (keys[i - 1] > keys[i]) {
         return false;
-      } 
+      }
+    }
+    return true;
+  }
+
+  private static int report(int i, Node node, Node[] results, BitSet found) {
+    if (results != null) {
+      results[i] = node;
+    } else {
+      found.set(i, node != null);
+    }
+    return node == null ? 0 : 1;
+  }
+
+  // -- Batch updates ------------------------------------------------------------------------------
+
+  //postcondition: every key of the batch is in the tree; bit i of the result is set if keys[i] was newly added
+  //(a key that occurs twice in the batch is only new the first time). Duplicates don't throw. In a multiset every
+  //key of the batch adds an occurrence, so every bit is set.
+  public BitSet insertAll(int[] keys) {
+    BitSet added = new BitSet(keys.length);
+    Node finger = null;
+    for (long entry : sortedWithPositions(keys)) {
+      int key = (int) (entry >> 32);
+      finger = finger == null ? root : climbToCover(finger, key);
+      int sizeBefore = size();
+      finger = findOrInsertBelow(finger, key);
+      if (size() != sizeBefore) {
+        added.set((int) entry);
+      } else if (multiset) {
+        addOccurrence(finger);
+        added.set((int) entry);
+      }
+    }
+    return added;
+  }
+
+  //postcondition: no key of the batch is in the tree; bit i of the result is set if keys[i] was removed.
+  //In a multiset each key of the batch removes one occurrence.
+  public BitSet deleteAll(int[] keys) {
+    BitSet removed = new BitSet(keys.length);
+    Node finger = null;
+    for (long entry : sortedWithPositions(keys)) {
+      if (root == null) {
+        break;
+      }
+      int key = (int) (entry >> 32);
+      finger = finger == null ? root : climbToCover(finger, key);
+      Node node = findBelow(finger, key);
+      if (node != null) {
+        removed.set((int) entry);
+        if (node.count > 1) {
+          removeOccurrence(node);
+          finger = node;
+        } else {
+          finger = deleteNode(node);
+        }
+      }
     }
-    
-    /* }if(n.left!=null){
-      check=checkChildren(n.left);
-    }else if(n.right!=null){
-      check=checkChildren(n.right);
+    return removed;
+  }
+
+  // Packs every key with its position in the batch (key in the high half) and sorts them, so the batch
+  // can be applied in key order and still report results by position
+  private static long[] sortedWithPositions(int[] keys) {
+    long[] entries = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      entries[i] = ((long) keys[i] << 32) | i;
     }
-   //else{
-     // return true;//null
-    //}
+    Arrays.sort(entries);
+    return entries;
+  }
+
+  // Finger search: climbs from the last touched node just far enough that its subtree spans key.
+  // For a sorted batch that's usually a few levels instead of a full descent from the root.
+  private Node climbToCover(Node node, int key) {
+    if (key == node.key) {
+      return node;
+    }
+    boolean goingRight = key > node.key;
+    while (node.parent != null) {
+      Node parent = node.parent;
+      // Only an ancestor we reach from the opposite side can bound the subtree on the side the key lies
+      if (goingRight && node == parent.left && key < parent.key) {
+        return node;
+      }
+      if (!goingRight && node == parent.right && key > parent.key) {
+        return node;
+      }
+      node = parent;
+    }
+    return node;
+  }
+
+  // -- Bulk construction --------------------------------------------------------------------------
+
+  //precondition: keys are sorted in strictly increasing order
+  //postcondition: a tree holding exactly these keys, built in O(n) without any rotations or fixups
+  public static RedBlackTree fromSorted(int[] keys) {
+    for (int i = 1; i < keys.length; i++) {
+      if (keys[i - 1] >= keys[i]) {
+        throw new IllegalArgumentException("Keys must be sorted and free of duplicates, but " + keys[i - 1]
+            + " is followed by " + keys[i] + " at index " + i);
+      }
+    }
+
+    // Splitting at the median puts every leaf on the last two levels. If the last level isn't full, coloring it
+    // red (and everything above black) gives all paths the same black height.
+    int levels = 32 - Integer.numberOfLeadingZeros(keys.length);
+    boolean lastLevelFull = keys.length == (1L << levels) - 1;
+    int redLevel = lastLevelFull ? 0 : levels;
+
+    RedBlackTree tree = new RedBlackTree();
+    tree.root = buildBalanced(keys, 0, keys.length - 1, 1, redLevel, null);
+    return tree;
+  }
+
+  //precondition: the stream yields keys in strictly increasing order
+  //postcondition: same as fromSorted(int[])
+  public static RedBlackTree fromSorted(IntStream keys) {
+    return fromSorted(keys.toArray());
+  }
+
+  // Recursion depth is the height of the result, i.e. about log2(n)
+  private static Node buildBalanced(int[] keys, int lo, int hi, int level, int redLevel, Node parent) {
+    if (lo > hi) {
+      return null;
+    }
+    int mid = (lo + hi) >>> 1;
+    Node node = new Node(keys[mid]);
+    node.parent = parent;
+    node.color = level == redLevel ? RED : BLACK;
+    node.left = buildBalanced(keys, lo, mid - 1, level + 1, redLevel, node);
+    node.right = buildBalanced(keys, mid + 1, hi, level + 1, redLevel, node);
+    updateAugmentedFields(node);
+    return node;
+  }
 
-*/
-    return check;
+  // -- Snapshots ----------------------------------------------------------------------------------
+
+  //postcondition: file holds the keys of this tree, and with keepShape also its exact shape and colors
+  //(see TreeSnapshot for the format)
+  public void save(Path file, boolean keepShape) throws IOException {
+    TreeSnapshot.write(this, file, keepShape);
+  }
+
+  //postcondition: the tree saved in file, rebuilt in O(n) without rotations
+  //throws IOException if the file is not a snapshot or is corrupt
+  public static RedBlackTree load(Path file) throws IOException {
+    return TreeSnapshot.read(file);
+  }
+
+  //postcondition: an immutable index of the keys of this tree in a cache-friendly array layout, built in O(n)
+  //(see FrozenRedBlackTree). A multiset is frozen as its distinct keys. Later changes to this tree don't affect it.
+  public FrozenRedBlackTree freeze() {
+    int[] keys = new int[size()];
+    int count = 0;
+    for (Node node = firstNode(); node != null; node = successor(node)) {
+      keys[count++] = node.key;
+    }
+    return FrozenRedBlackTree.ofSorted(keys, count);
+  }
+
+  // -- Join, split and set operations -------------------------------------------------------------
+  // Everything here is built on join, following Blelloch, Ferizovic and Sun, "Just Join for Parallel Ordered Sets".
+  // The operations work on detached subtrees and move the nodes of their inputs instead of copying them. Each
+  // subtree travels together with its black height (a Piece), so a join only descends as many levels as the two
+  // black heights differ and never has to measure a spine.
+
+  // Combined input size above which a set operation forks its two recursive halves
+  private static final int PARALLEL_CUTOFF = 1 << 13;
+
+  private static final int UNION = 0;
+  private static final int INTERSECTION = 1;
+  private static final int DIFFERENCE = 2;
+
+  //precondition: every key of left is smaller than key, and every key of right is larger than key
+  //postcondition: a tree holding the keys of both trees and key, in O(log n). The nodes of left and right are
+  //moved into the result, so both are left empty. The result is a multiset if left is.
+  public static RedBlackTree join(RedBlackTree left, int key, RedBlackTree right) {
+    if (left.root != null && left.lastNode().key >= key) {
+      throw new IllegalArgumentException("Left tree has keys that are not smaller than " + key);
+    }
+    if (right.root != null && right.firstNode().key <= key) {
+      throw new IllegalArgumentException("Right tree has keys that are not larger than " + key);
+    }
+    Piece joined = join(left.takeAll(), new Node(key), right.takeAll());
+    RedBlackTree tree = new RedBlackTree(left.multiset);
+    tree.adopt(joined);
+    return tree;
+  }
+
+  //postcondition: this tree keeps the keys smaller than key; the keys greater than or equal to key are moved
+  //into the returned tree. Runs in O(log n).
+  public RedBlackTree split(int key) {
+    Split split = split(takeAll(), key);
+    Piece greater = split.greater;
+    if (split.match != null) {
+      greater = join(new Piece(null, 0), split.match, greater);
+    }
+    adopt(split.less);
+    RedBlackTree tree = new RedBlackTree(multiset);
+    tree.adopt(greater);
+    return tree;
+  }
+
+  //postcondition: this tree holds every key that was in either tree; other is left empty, its nodes are moved
+  //over or dropped. Runs in O(m log(n/m + 1)) for trees of sizes m <= n, forking large halves on the common
+  //ForkJoinPool. In multisets, union and intersection keep this tree's count of a key that is in both trees.
+  public void union(RedBlackTree other) {
+    if (other != this) {
+      adopt(setOperation(UNION, takeAll(), other.takeAll()));
+    }
+  }
+
+  //postcondition: this tree holds the keys that were in both trees; other is left empty. Same cost as union.
+  public void intersection(RedBlackTree other) {
+    if (other != this) {
+      adopt(setOperation(INTERSECTION, takeAll(), other.takeAll()));
+    }
+  }
+
+  //postcondition: this tree holds its keys that were not in other; other is left empty. Same cost as union.
+  public void difference(RedBlackTree other) {
+    Piece subtrahend = other.takeAll();
+    adopt(other == this ? new Piece(null, 0) : setOperation(DIFFERENCE, takeAll(), subtrahend));
+  }
+
+  // Detaches all nodes from this tree
+  private Piece takeAll() {
+    Piece all = new Piece(root, blackHeightOf(root));
+    root = null;
+    if (cachedBlackHeight >= 0) {
+      cachedBlackHeight = 0;
+    }
+    return all;
+  }
+
+  // Makes a detached subtree the whole tree, with a black root
+  private void adopt(Piece piece) {
+    root = piece.root;
+    if (cachedBlackHeight >= 0) {
+      cachedBlackHeight = root == null ? 0 : piece.blackHeight + (root.color == RED ? 1 : 0);
+    }
+    if (root != null) {
+      root.parent = null;
+      root.color = BLACK;
+    }
   }
+
+  private static Piece setOperation(int operation, Piece a, Piece b) {
+    if (sizeOf(a.root) + sizeOf(b.root) < PARALLEL_CUTOFF) {
+      return combine(operation, a, b);
+    }
+    return ForkJoinPool.commonPool().invoke(new SetOperationTask(operation, a, b));
+  }
+
+  // One step of union, intersection or difference: splits one input at the other's root, recurses on the two
+  // halves and joins the results
+  private static Piece combine(int operation, Piece a, Piece b) {
+    if (a.root == null) {
+      return operation == UNION ? b : a;
+    }
+    if (b.root == null) {
+      return operation == INTERSECTION ? b : a;
+    }
+    // Difference has to keep a's keys, so it splits a at b's root; the others split b at a's root
+    Piece pivotSide = operation == DIFFERENCE ? b : a;
+    Split split = split(operation == DIFFERENCE ? a : b, pivotSide.root.key);
+    Node pivot = pivotSide.root;
+    int childBlackHeight = pivotSide.blackHeight - (isBlack(pivot) ? 1 : 0);
+    Piece pivotLeft = new Piece(pivot.left, childBlackHeight);
+    Piece pivotRight = new Piece(pivot.right, childBlackHeight);
+
+    Piece left;
+    Piece right;
+    if (sizeOf(a.root) + sizeOf(b.root) >= PARALLEL_CUTOFF) {
+      SetOperationTask leftTask = operation == DIFFERENCE
+          ? new SetOperationTask(operation, split.less, pivotLeft)
+          : new SetOperationTask(operation, pivotLeft, split.less);
+      leftTask.fork();
+      right = operation == DIFFERENCE
+          ? combine(operation, split.greater, pivotRight)
+          : combine(operation, pivotRight, split.greater);
+      left = leftTask.join();
+    } else if (operation == DIFFERENCE) {
+      left = combine(operation, split.less, pivotLeft);
+      right = combine(operation, split.greater, pivotRight);
+    } else {
+      left = combine(operation, pivotLeft, split.less);
+      right = combine(operation, pivotRight, split.greater);
+    }
+
+    boolean keepPivot = operation == UNION || (operation == INTERSECTION && split.match != null);
+    return keepPivot ? join(left, pivot, right) : join(left, right);
+  }
+
+  private static final class SetOperationTask extends RecursiveTask<Piece> {
+    private static final long serialVersionUID = 1L;
+
+    private final int operation;
+    private final Piece a;
+    private final Piece b;
+
+    SetOperationTask(int operation, Piece a, Piece b) {
+      this.operation = operation;
+      this.a = a;
+      this.b = b;
+    }
+
+    @Override
+    protected Piece compute() {
+      return combine(operation, a, b);
+    }
+  }
+
+  // Splits a detached subtree into the keys smaller and greater than key, and the node holding key, if any
+  private static Split split(Piece piece, int key) {
+    Node node = piece.root;
+    if (node == null) {
+      return new Split(piece, null, piece);
+    }
+    int childBlackHeight = piece.blackHeight - (isBlack(node) ? 1 : 0);
+    if (key == node.key) {
+      return new Split(new Piece(node.left, childBlackHeight), node, new Piece(node.right, childBlackHeight));
+    }
+    if (key < node.key) {
+      Split below = split(new Piece(node.left, childBlackHeight), key);
+      return new Split(below.less, below.match, join(below.greater, node, new Piece(node.right, childBlackHeight)));
+    }
+    Split below = split(new Piece(node.right, childBlackHeight), key);
+    return new Split(join(new Piece(node.left, childBlackHeight), node, below.less), below.match, below.greater);
+  }
+
+  // Joins two detached subtrees where every key of left is smaller than every key of right, using right's
+  // smallest node as the middle
+  private static Piece join(Piece left, Piece right) {
+    if (right.root == null) {
+      return left;
+    }
+    Split rest = splitFirst(right);
+    return join(left, rest.match, rest.greater);
+  }
+
+  // Separates the smallest node from a non-empty detached subtree
+  private static Split splitFirst(Piece piece) {
+    Node node = piece.root;
+    int childBlackHeight = piece.blackHeight - (isBlack(node) ? 1 : 0);
+    if (node.left == null) {
+      return new Split(null, node, new Piece(node.right, childBlackHeight));
+    }
+    Split below = splitFirst(new Piece(node.left, childBlackHeight));
+    return new Split(null, below.match, join(below.greater, node, new Piece(node.right, childBlackHeight)));
+  }
+
+  // Joins two detached subtrees and a middle node whose key lies between them. The roots of both subtrees are
+  // blackened first; the taller one is then descended along its inner spine to a black node of the other's black
+  // height, the middle node is linked in there as a red node, and any red-red violation is rotated away on the
+  // way back up.
+  private static Piece join(Piece left, Node middle, Piece right) {
+    int leftBlackHeight = left.blackHeight;
+    int rightBlackHeight = right.blackHeight;
+    if (left.root != null && left.root.color == RED) {
+      left.root.color = BLACK;
+      leftBlackHeight++;
+    }
+    if (right.root != null && right.root.color == RED) {
+      right.root.color = BLACK;
+      rightBlackHeight++;
+    }
+
+    Node joined;
+    int blackHeight;
+    if (leftBlackHeight > rightBlackHeight) {
+      joined = joinRight(left.root, leftBlackHeight, middle, right.root, rightBlackHeight);
+      blackHeight = leftBlackHeight;
+    } else if (rightBlackHeight > leftBlackHeight) {
+      joined = joinLeft(left.root, leftBlackHeight, middle, right.root, rightBlackHeight);
+      blackHeight = rightBlackHeight;
+    } else {
+      middle.color = RED;
+      joined = link(left.root, middle, right.root);
+      blackHeight = leftBlackHeight;
+    }
+
+    // A red root with a red child is fixed by blackening the root, which adds a black level
+    if (joined.color == RED && (!isBlack(joined.left) || !isBlack(joined.right))) {
+      joined.color = BLACK;
+      blackHeight++;
+    }
+    joined.parent = null;
+    return new Piece(joined, blackHeight);
+  }
+
+  // Descends the right spine of left, which is the taller subtree; right has a black root (or is empty)
+  private static Node joinRight(Node left, int leftBlackHeight, Node middle, Node right, int rightBlackHeight) {
+    if (isBlack(left) && leftBlackHeight == rightBlackHeight) {
+      middle.color = RED;
+      return link(left, middle, right);
+    }
+    int childBlackHeight = leftBlackHeight - (isBlack(left) ? 1 : 0);
+    Node joined = link(left.left, left, joinRight(left.right, childBlackHeight, middle, right, rightBlackHeight));
+    if (isBlack(joined) && !isBlack(joined.right) && !isBlack(joined.right.right)) {
+      joined.right.right.color = BLACK;
+      return rotateLeftDetached(joined);
+    }
+    return joined;
+  }
+
+  // Mirror image of joinRight, for a taller right subtree
+  private static Node joinLeft(Node left, int leftBlackHeight, Node middle, Node right, int rightBlackHeight) {
+    if (isBlack(right) && rightBlackHeight == leftBlackHeight) {
+      middle.color = RED;
+      return link(left, middle, right);
+    }
+    int childBlackHeight = rightBlackHeight - (isBlack(right) ? 1 : 0);
+    Node joined = link(joinLeft(left, leftBlackHeight, middle, right.left, childBlackHeight), right, right.right);
+    if (isBlack(joined) && !isBlack(joined.left) && !isBlack(joined.left.left)) {
+      joined.left.left.color = BLACK;
+      return rotateRightDetached(joined);
+    }
+    return joined;
+  }
+
+  // Unlike rotateLeft, these don't touch root, so they also work on subtrees that are not part of any tree
+  private static Node rotateLeftDetached(Node node) {
+    Node rightChild = node.right;
+    link(node.left, node, rightChild.left);
+    return link(node, rightChild, rightChild.right);
+  }
+
+  private static Node rotateRightDetached(Node node) {
+    Node leftChild = node.left;
+    link(leftChild.right, node, node.right);
+    return link(leftChild.left, leftChild, node);
+  }
+
+  // Makes left and right the children of node and recomputes node's size and height
+  private static Node link(Node left, Node node, Node right) {
+    node.left = left;
+    node.right = right;
+    if (left != null) {
+      left.parent = node;
+    }
+    if (right != null) {
+      right.parent = node;
+    }
+    updateAugmentedFields(node);
+    return node;
+  }
+
+  // Number of black nodes on the leftmost path below node, node included
+  private static int blackHeightOf(Node node) {
+    int h = 0;
+    for (; node != null; node = node.left) {
+      if (isBlack(node)) {
+        h++;
+      }
+    }
+    return h;
+  }
+
+  // A detached subtree (possibly empty) and its black height, i.e. the black nodes on any path from its root down
+  // to a leaf, root included
+  private static final class Piece {
+    final Node root;
+    final int blackHeight;
+
+    Piece(Node root, int blackHeight) {
+      this.root = root;
+      this.blackHeight = blackHeight;
+    }
+  }
+
+  // Result of splitting a subtree at a key: the smaller keys, the node holding the key (or null) and the greater keys
+  private static final class Split {
+    final Piece less;
+    final Node match;
+    final Piece greater;
+
+    Split(Piece less, Node match, Piece greater) {
+      this.less = less;
+      this.match = match;
+      this.greater = greater;
+    }
+  }
+
   
-//precondition: method is called
-//postcondition:  should return a string of comma separated keys that represents the shortest height path through the tree.
+  
+  
+   //------- printing
+  public static void showTrunks(Trunk p)
+  {
+      if (p == null) {
+          return;
+      }
 
-  public String shortestTruePath() {
-    Node n=root;
-    ArrayList<Node> list=new ArrayList<>();
-    String out="";
-
-      list=shortPathHelper(n,list);
-    
-    for(Node i:list){
-      
-      out+=i.key+", ";
-    }
-
-	  return out;
-  }
-  //Perhaps this would be easier to do with some helper functions?
-  //shortestTruePath helper function
-  private ArrayList<Node> shortPathHelper(Node n,ArrayList<Node> l){
-    int h;
-    l.add(n);
-  if(n==null){
-    System.out.println("pathhelperended");
-    return (l);
-  }else if(n.left!=null && n.right!=null){
-    h=Math.min(heightHelper(n.left),heightHelper(n.right));
-    if(h==heightHelper(n.left)){
-      return shortPathHelper(n.left,l);
-    }else if(h==heightHelper(n.right)){
-      return shortPathHelper(n.right,l);
-    }
-  }else if(n.left!=null){
-    return shortPathHelper(n.left,l);
-  }else if(n.right!=null){
-    return shortPathHelper(n.right,l);
-  }else{
-    System.out.println("pathhelperended");
-    return l;
-  }
-  System.out.println("shortpathhelper missed");
-    return l;
+      showTrunks(p.prev);
+      System.out.print(p.str);
+  }
+
+  //postcondition: the tree has been drawn to System.out, right subtrees above left ones. Iterative and buffered;
+  //use TreeRenderer directly for other outputs, DOT or JSON, or to limit the depth and number of nodes drawn.
+  public void printTree(){
+      try {
+          TreeRenderer.of(TreeRenderer.Format.ASCII).render(this, System.out);
+      } catch (IOException e) {
+          // PrintStream never throws, it only sets its error flag
+          throw new UncheckedIOException(e);
+      }
+      System.out.flush();
   }
   
-//precondition: method is called
-//postcondition: returns the absolute value of the difference between the real height of the tree and its black height. 
+  
+  
+  //---- Diagnostics
+  // The tree is a Red Black Tree if:
+  // 1 Every node is either red or black.
+  // 2 The root is black.
+  // 3 Every leaf (nil) is black.
+  // 4 If a node is red, then both its children are black.
+  // 5 For each node, all paths from the node to descendant leaves contain the same number of black nodes.
+  // TreeStats checks all of them in a single iterative O(n) pass, without printing anything.
+
+//postcondition: height, black height, shortest path and rule checks of the whole tree, computed in O(n)
+  public TreeStats stats() {
+    return TreeStats.of(root);
+  }
+
+//postcondition:returns true if tree is a red black tree and false if not
+  public boolean isRedBlack() {
+    return stats().isRedBlack();
+  }
+
+//postcondition:  should return a string of comma separated keys that represents the shortest height path through the tree.
+  public String shortestTruePath() {
+    StringBuilder out = new StringBuilder();
+    for (int key : stats().shortestPath()) {
+      out.append(key).append(", ");
+    }
+    return out.toString();
+  }
+
+//postcondition: returns the absolute value of the difference between the real height of the tree and its black height.
   public int trueHeightDiff(){
     return height()-blackHeight();
-	  //return 0;
   }
 
-//precondition
-//postcondition
+//postcondition: number of black nodes on a path from the root to a leaf, root included.
+//O(1) while stats caching is enabled, O(log n) otherwise
 public int blackHeight(){
-  return blackHeight(root);
-}
-
-private int blackHeight(Node n){
-  int h=1;
-  if(n==null){
-    return 0;
-  }else if(n.left==null && n.right==null){// base case
-    if(isBlack(n)){
-      //System.out.println("bh base case black");
-      return 1;
-    }else{
-      
-      //System.out.println("bh base case red");
-      return 0;
-    }
-  }else if(n.left!=null&& n.right!=null){
-    int left;
-    int right;
-    if(isBlack(n)){
-      left=1+blackHeight(n.left);
-      right=1+blackHeight(n.right);
-    }else{
-      left=blackHeight(n.left);
-      right=blackHeight(n.right);
-    }
-   /* if(isBlack(n.left)){
-      left=1+blackHeight(n.left);
-    }else{
-      left=blackHeight(n.left);
-    }
-    if(isBlack(n.right)){
-      right=1+blackHeight(n.right);
-    }else{
-      right=blackHeight(n.right);
-    }*/
-    return Math.max(left,right);
-  }else if(n.left!=null){
-    if(isBlack(n.left)){
-    return 1+blackHeight(n.left);
-  }else{
-    return blackHeight(n.left);
-  }
-  }else if(n.right!=null){
-    if(isBlack(n.left)){
-      return 1+blackHeight(n.right);
-    }else{
-      return blackHeight(n.right);
-    }
-  }else{
-    return h;
+  if (cachedBlackHeight >= 0) {
+    return cachedBlackHeight;
   }
+  // In a valid tree every path has the same black height, so the leftmost one will do
+  return blackHeightOf(root);
 }
-//precondition:no conditions
-//postcondition: height of the longest path to leaves is returned
-public int height(){
-  Node n=root;
 
-  return heightHelper(n);
+//postcondition: height of the longest path to leaves is returned, in O(1)
+public int height(){
+  return heightOf(root);
+}
 
+//precondition: no conditions
+//postcondition: while enabled, blackHeight() (and with it trueHeightDiff()) answers in O(1) from a value that insert
+//and delete adjust in O(1): the black height only changes when an insert recolors a red root black, or a delete
+//fixup carries a missing black level up to the root. height() is always O(1) because every node keeps its height.
+public void setStatsCaching(boolean enabled){
+  cachedBlackHeight = enabled ? blackHeightOf(root) : -1;
 }
-//recursively finds the height of the node
-private int heightHelper(Node n){
-  int h=1;
-  if(n==null){
-    return 0;
-  }else if(n.left==null && n.right==null){
-    return 1;
-  }else if(n.left!=null&& n.right!=null){
-    return Math.max(h+heightHelper(n.left),h+heightHelper(n.right));
-  }else if(n.left!=null){
-    return h+heightHelper(n.left);
-  }else if(n.right!=null){
-    return h+heightHelper(n.right);
-  }else{
-    return h;
+
+private void adjustCachedBlackHeight(int delta){
+  if (cachedBlackHeight >= 0) {
+    cachedBlackHeight += delta;
   }
-  //return 1;
 }
 
 //3 points for comments, conventions and formatting your code cleanly.
@@ -0,0 +1,314 @@
+//A java.util.NavigableSet<Integer> view of a RedBlackTree, for code written against the collections API and for
+//comparing the tree with TreeSet on equal terms. Every operation maps onto one of the tree's int operations, so
+//lookups are O(log n) like TreeSet's; the price is the boxing the interface forces on every key.
+//Sub-set, head-set, tail-set and descending views are the same class with narrower bounds or reversed order, and
+//they write through to the tree. Unlike TreeSet, a view accepts any bounds and simply intersects them with its own.
+//Iterators are not fail-fast: changing the tree other than through an iterator's own remove leaves it undefined.
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+public final class RedBlackTreeNavigableSet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+  private static final long NOT_FOUND = RedBlackTree.NOT_FOUND;
+
+  private final RedBlackTree tree;
+  // Inclusive bounds of the view; lo > hi means the view is empty
+  private final long lo;
+  private final long hi;
+  private final boolean descending;
+
+  public RedBlackTreeNavigableSet() {
+    this(new RedBlackTree());
+  }
+
+  //precondition: tree is not a multiset
+  //postcondition: a view of all of tree; changes to either show in the other
+  public RedBlackTreeNavigableSet(RedBlackTree tree) {
+    this(tree, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
+    if (tree.isMultiset()) {
+      throw new IllegalArgumentException("A set can't be backed by a multiset");
+    }
+  }
+
+  private RedBlackTreeNavigableSet(RedBlackTree tree, long lo, long hi, boolean descending) {
+    this.tree = tree;
+    this.lo = lo;
+    this.hi = hi;
+    this.descending = descending;
+  }
+
+  // -- Range helpers, all in ascending key order --------------------------------------------------
+
+  private boolean inRange(long key) {
+    return lo <= key && key <= hi;
+  }
+
+  // Smallest key >= key within the bounds, or NOT_FOUND
+  private long ceilingIn(long key) {
+    key = Math.max(key, lo);
+    if (key > hi) {
+      return NOT_FOUND;
+    }
+    long found = tree.ceiling((int) key);
+    return found != NOT_FOUND && found <= hi ? found : NOT_FOUND;
+  }
+
+  // Largest key <= key within the bounds, or NOT_FOUND
+  private long floorIn(long key) {
+    key = Math.min(key, hi);
+    if (key < lo) {
+      return NOT_FOUND;
+    }
+    long found = tree.floor((int) key);
+    return found != NOT_FOUND && found >= lo ? found : NOT_FOUND;
+  }
+
+  private static Integer boxed(long key) {
+    return key == NOT_FOUND ? null : (int) key;
+  }
+
+  // First key in iteration order
+  private long firstKey() {
+    return descending ? floorIn(hi) : ceilingIn(lo);
+  }
+
+  private long lastKey() {
+    return descending ? ceilingIn(lo) : floorIn(hi);
+  }
+
+  // A view of [from, to] (ascending key order) intersected with this one's bounds, in the given order
+  private RedBlackTreeNavigableSet view(long from, long to, boolean descending) {
+    return new RedBlackTreeNavigableSet(tree, Math.max(lo, from), Math.min(hi, to), descending);
+  }
+
+  // -- Set ----------------------------------------------------------------------------------------
+
+  @Override
+  public int size() {
+    return lo > hi ? 0 : tree.countInRange((int) lo, (int) hi);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return ceilingIn(lo) == NOT_FOUND;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Integer && inRange((Integer) o) && tree.search((Integer) o) != null;
+  }
+
+  //throws IllegalArgumentException if e lies outside the bounds of this view
+  @Override
+  public boolean add(Integer e) {
+    if (!inRange(e)) {
+      throw new IllegalArgumentException("Key " + e + " is out of the range of this view");
+    }
+    return tree.insertIfAbsent(e);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    tree.delete((Integer) o);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    while (pollFirst() != null) {
+      // Keep polling
+    }
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    return new KeyIterator();
+  }
+
+  // -- NavigableSet -------------------------------------------------------------------------------
+
+  @Override
+  public Integer lower(Integer e) {
+    return boxed(descending ? ceilingIn(e + 1L) : floorIn(e - 1L));
+  }
+
+  @Override
+  public Integer floor(Integer e) {
+    return boxed(descending ? ceilingIn(e) : floorIn(e));
+  }
+
+  @Override
+  public Integer ceiling(Integer e) {
+    return boxed(descending ? floorIn(e) : ceilingIn(e));
+  }
+
+  @Override
+  public Integer higher(Integer e) {
+    return boxed(descending ? floorIn(e - 1L) : ceilingIn(e + 1L));
+  }
+
+  // A view of the whole tree can let the tree poll in one descent; otherwise find the key first, then delete it
+  @Override
+  public Integer pollFirst() {
+    if (isWholeTree()) {
+      return boxed(descending ? tree.pollLast() : tree.pollFirst());
+    }
+    return poll(firstKey());
+  }
+
+  @Override
+  public Integer pollLast() {
+    if (isWholeTree()) {
+      return boxed(descending ? tree.pollFirst() : tree.pollLast());
+    }
+    return poll(lastKey());
+  }
+
+  private boolean isWholeTree() {
+    return lo == Integer.MIN_VALUE && hi == Integer.MAX_VALUE;
+  }
+
+  private Integer poll(long key) {
+    if (key == NOT_FOUND) {
+      return null;
+    }
+    tree.delete((int) key);
+    return (int) key;
+  }
+
+  @Override
+  public Integer first() {
+    return orThrow(firstKey());
+  }
+
+  @Override
+  public Integer last() {
+    return orThrow(lastKey());
+  }
+
+  private static Integer orThrow(long key) {
+    if (key == NOT_FOUND) {
+      throw new NoSuchElementException();
+    }
+    return (int) key;
+  }
+
+  @Override
+  public NavigableSet<Integer> descendingSet() {
+    return new RedBlackTreeNavigableSet(tree, lo, hi, !descending);
+  }
+
+  @Override
+  public Iterator<Integer> descendingIterator() {
+    return descendingSet().iterator();
+  }
+
+  //throws IllegalArgumentException if fromElement comes after toElement in the order of this view
+  @Override
+  public NavigableSet<Integer> subSet(Integer fromElement, boolean fromInclusive, Integer toElement,
+      boolean toInclusive) {
+    if (descending ? fromElement < toElement : fromElement > toElement) {
+      throw new IllegalArgumentException("fromElement " + fromElement + " comes after toElement " + toElement);
+    }
+    return descending
+        ? view(lowBound(toElement, toInclusive), highBound(fromElement, fromInclusive), true)
+        : view(lowBound(fromElement, fromInclusive), highBound(toElement, toInclusive), false);
+  }
+
+  @Override
+  public NavigableSet<Integer> headSet(Integer toElement, boolean inclusive) {
+    return descending
+        ? view(lowBound(toElement, inclusive), hi, true)
+        : view(lo, highBound(toElement, inclusive), false);
+  }
+
+  @Override
+  public NavigableSet<Integer> tailSet(Integer fromElement, boolean inclusive) {
+    return descending
+        ? view(lo, highBound(fromElement, inclusive), true)
+        : view(lowBound(fromElement, inclusive), hi, false);
+  }
+
+  // Inclusive lower and upper bounds for a possibly exclusive element
+  private static long lowBound(int element, boolean inclusive) {
+    return inclusive ? element : element + 1L;
+  }
+
+  private static long highBound(int element, boolean inclusive) {
+    return inclusive ? element : element - 1L;
+  }
+
+  @Override
+  public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  @Override
+  public SortedSet<Integer> headSet(Integer toElement) {
+    return headSet(toElement, false);
+  }
+
+  @Override
+  public SortedSet<Integer> tailSet(Integer fromElement) {
+    return tailSet(fromElement, true);
+  }
+
+  //postcondition: null (natural order) for an ascending view, reverse order for a descending one
+  @Override
+  public Comparator<? super Integer> comparator() {
+    return descending ? Collections.reverseOrder() : null;
+  }
+
+  // Walks the tree with a Cursor. A remove deletes the last key returned, which invalidates the cursor, so the
+  // cursor is then repositioned on the key it was about to return.
+  private final class KeyIterator implements Iterator<Integer> {
+    private final RedBlackTree.Cursor cursor = tree.cursor();
+    private boolean hasNext;
+    private long lastReturned = NOT_FOUND;
+
+    KeyIterator() {
+      if (lo <= hi) {
+        hasNext = descending ? cursor.seekFloor((int) hi) : cursor.seekCeiling((int) lo);
+        hasNext = hasNext && inRange(cursor.key());
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return hasNext;
+    }
+
+    @Override
+    public Integer next() {
+      if (!hasNext) {
+        throw new NoSuchElementException();
+      }
+      int key = cursor.key();
+      lastReturned = key;
+      hasNext = (descending ? cursor.previous() : cursor.next()) && inRange(cursor.key());
+      return key;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == NOT_FOUND) {
+        throw new IllegalStateException();
+      }
+      int upcoming = hasNext ? cursor.key() : 0;
+      tree.delete((int) lastReturned);
+      lastReturned = NOT_FOUND;
+      if (hasNext) {
+        hasNext = descending ? cursor.seekFloor(upcoming) : cursor.seekCeiling(upcoming);
+      }
+    }
+  }
+}
@@ -0,0 +1,354 @@
+//Splits the int key space into range partitions ("shards"), each one its own ConcurrentRedBlackTree with its own lock,
+//so writes to different shards never wait for each other. Batches are split by shard and applied in parallel on a
+//ForkJoinPool; global reads visit the shards in key order and combine their answers.
+//Shard boundaries can be chosen from a sample of the keys, and rebalance() recomputes them from the current contents
+//so a skewed key distribution doesn't end up in one shard.
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+
+public class ShardedRedBlackTree {
+
+  // Shard i holds the keys k with lowerBounds[i] <= k < lowerBounds[i + 1]; lowerBounds[0] is Integer.MIN_VALUE
+  private int[] lowerBounds;
+  private ConcurrentRedBlackTree[] shards;
+
+  // Held shared by every operation and exclusively by rebalance(), which replaces the shards
+  private final StampedLock layoutLock = new StampedLock();
+  private final ForkJoinPool pool;
+
+  //precondition: splitPoints are strictly increasing; shard i + 1 starts at splitPoints[i]
+  public ShardedRedBlackTree(int[] splitPoints) {
+    this(splitPoints, ForkJoinPool.commonPool());
+  }
+
+  //precondition: splitPoints are strictly increasing; shard i + 1 starts at splitPoints[i]
+  public ShardedRedBlackTree(int[] splitPoints, ForkJoinPool pool) {
+    this.pool = pool;
+    this.lowerBounds = toLowerBounds(splitPoints);
+    this.shards = new ConcurrentRedBlackTree[lowerBounds.length];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new ConcurrentRedBlackTree();
+    }
+  }
+
+  //postcondition: a tree whose shards split the whole int range into equally wide parts
+  public static ShardedRedBlackTree withEvenSplits(int shardCount) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Need at least one shard, got " + shardCount);
+    }
+    int[] splitPoints = new int[shardCount - 1];
+    long width = (1L << 32) / shardCount;
+    for (int i = 0; i < splitPoints.length; i++) {
+      splitPoints[i] = (int) (Integer.MIN_VALUE + width * (i + 1));
+    }
+    return new ShardedRedBlackTree(splitPoints);
+  }
+
+  //postcondition: a tree whose boundaries are quantiles of sample, so keys distributed like the sample spread
+  //evenly over (at most) shardCount shards
+  public static ShardedRedBlackTree fromSample(int[] sample, int shardCount) {
+    return new ShardedRedBlackTree(splitPointsFromSample(sample, shardCount));
+  }
+
+  public int shardCount() {
+    long stamp = layoutLock.readLock();
+    try {
+      return shards.length;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  // -- Single-key operations ----------------------------------------------------------------------
+
+  public void insert(int key) {
+    long stamp = layoutLock.readLock();
+    try {
+      shards[shardOf(key)].insert(key);
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  public void delete(int key) {
+    long stamp = layoutLock.readLock();
+    try {
+      shards[shardOf(key)].delete(key);
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  public boolean search(int key) {
+    long stamp = layoutLock.readLock();
+    try {
+      return shards[shardOf(key)].search(key);
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  // -- Batch operations ---------------------------------------------------------------------------
+
+  //postcondition: see RedBlackTree.insertAll; every shard applies its part of the batch in parallel
+  public BitSet insertAll(int[] keys) {
+    return applyBatch(keys, true);
+  }
+
+  //postcondition: see RedBlackTree.deleteAll; every shard applies its part of the batch in parallel
+  public BitSet deleteAll(int[] keys) {
+    return applyBatch(keys, false);
+  }
+
+  private BitSet applyBatch(int[] keys, boolean insert) {
+    long stamp = layoutLock.readLock();
+    try {
+      // Counting sort of the batch by shard, remembering where every key came from
+      int[] shardOfKey = new int[keys.length];
+      int[] starts = new int[shards.length + 1];
+      for (int i = 0; i < keys.length; i++) {
+        shardOfKey[i] = shardOf(keys[i]);
+        starts[shardOfKey[i] + 1]++;
+      }
+      for (int s = 0; s < shards.length; s++) {
+        starts[s + 1] += starts[s];
+      }
+      int[] positions = new int[keys.length];
+      int[] fill = Arrays.copyOf(starts, shards.length);
+      for (int i = 0; i < keys.length; i++) {
+        positions[fill[shardOfKey[i]]++] = i;
+      }
+
+      RecursiveTask<BitSet>[] tasks = new ShardBatch[shards.length];
+      for (int s = 0; s < shards.length; s++) {
+        int[] shardKeys = new int[starts[s + 1] - starts[s]];
+        for (int j = 0; j < shardKeys.length; j++) {
+          shardKeys[j] = keys[positions[starts[s] + j]];
+        }
+        tasks[s] = new ShardBatch(shards[s], shardKeys, insert);
+      }
+      pool.invoke(new RecursiveTask<Void>() {
+        @Override
+        protected Void compute() {
+          ForkJoinTask.invokeAll(tasks);
+          return null;
+        }
+      });
+
+      // Translate every shard's per-key results back to positions in the original batch
+      BitSet result = new BitSet(keys.length);
+      for (int s = 0; s < shards.length; s++) {
+        BitSet shardResult = tasks[s].join();
+        for (int j = shardResult.nextSetBit(0); j >= 0; j = shardResult.nextSetBit(j + 1)) {
+          result.set(positions[starts[s] + j]);
+        }
+      }
+      return result;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  private static final class ShardBatch extends RecursiveTask<BitSet> {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentRedBlackTree shard;
+    private final int[] keys;
+    private final boolean insert;
+
+    ShardBatch(ConcurrentRedBlackTree shard, int[] keys, boolean insert) {
+      this.shard = shard;
+      this.keys = keys;
+      this.insert = insert;
+    }
+
+    @Override
+    protected BitSet compute() {
+      if (keys.length == 0) {
+        return new BitSet();
+      }
+      return insert ? shard.insertAll(keys) : shard.deleteAll(keys);
+    }
+  }
+
+  // -- Global reads -------------------------------------------------------------------------------
+  // Each shard is read consistently, but different shards may be read at slightly different times.
+
+  public int size() {
+    long stamp = layoutLock.readLock();
+    try {
+      int size = 0;
+      for (ConcurrentRedBlackTree shard : shards) {
+        size += shard.size();
+      }
+      return size;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: the longest root-to-leaf path over all shards, i.e. the most nodes any search visits
+  public int height() {
+    long stamp = layoutLock.readLock();
+    try {
+      int height = 0;
+      for (ConcurrentRedBlackTree shard : shards) {
+        height = Math.max(height, shard.height());
+      }
+      return height;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: number of keys k with lo <= k <= hi
+  public int countInRange(int lo, int hi) {
+    if (lo > hi) {
+      return 0;
+    }
+    long stamp = layoutLock.readLock();
+    try {
+      int count = 0;
+      for (int s = shardOf(lo), last = shardOf(hi); s <= last; s++) {
+        count += shards[s].countInRange(lo, hi);
+      }
+      return count;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  //postcondition: action has been called with every key in ascending order
+  public void forEach(IntConsumer action) {
+    forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+  }
+
+  //postcondition: action has been called, in ascending order, with every key k where lo <= k <= hi;
+  //only the shards overlapping [lo, hi] are visited
+  public void forEachInRange(int lo, int hi, IntConsumer action) {
+    if (lo > hi) {
+      return;
+    }
+    long stamp = layoutLock.readLock();
+    try {
+      for (int s = shardOf(lo), last = shardOf(hi); s <= last; s++) {
+        shards[s].forEachInRange(lo, hi, action);
+      }
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  // -- Shard layout -------------------------------------------------------------------------------
+
+  //postcondition: keys are redistributed over the same number of shards, with boundaries at the quantiles of
+  //the current keys; blocks all other operations while it runs
+  public void rebalance() {
+    long stamp = layoutLock.writeLock();
+    try {
+      int[] keys = allKeys();
+      relayout(keys, splitPointsFromSample(keys, shards.length));
+    } finally {
+      layoutLock.unlockWrite(stamp);
+    }
+  }
+
+  //postcondition: keys are redistributed over shardCount shards with boundaries at the quantiles of sample
+  public void rebalance(int[] sample, int shardCount) {
+    long stamp = layoutLock.writeLock();
+    try {
+      relayout(allKeys(), splitPointsFromSample(sample, shardCount));
+    } finally {
+      layoutLock.unlockWrite(stamp);
+    }
+  }
+
+  // Sizes of the shards, in key order; shows how evenly the keys are spread
+  public int[] shardSizes() {
+    long stamp = layoutLock.readLock();
+    try {
+      int[] sizes = new int[shards.length];
+      for (int s = 0; s < shards.length; s++) {
+        sizes[s] = shards[s].size();
+      }
+      return sizes;
+    } finally {
+      layoutLock.unlockRead(stamp);
+    }
+  }
+
+  // Called with the layout lock held exclusively
+  private int[] allKeys() {
+    int size = 0;
+    for (ConcurrentRedBlackTree shard : shards) {
+      size += shard.size();
+    }
+    int[] keys = new int[size];
+    int[] count = {0};
+    for (ConcurrentRedBlackTree shard : shards) {
+      shard.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, key -> keys[count[0]++] = key);
+    }
+    return keys;
+  }
+
+  // Called with the layout lock held exclusively; keys are sorted, so every shard is rebuilt in linear time
+  private void relayout(int[] keys, int[] splitPoints) {
+    int[] newLowerBounds = toLowerBounds(splitPoints);
+    ConcurrentRedBlackTree[] newShards = new ConcurrentRedBlackTree[newLowerBounds.length];
+    int from = 0;
+    for (int s = 0; s < newShards.length; s++) {
+      int to = from;
+      while (to < keys.length && (s + 1 == newShards.length || keys[to] < newLowerBounds[s + 1])) {
+        to++;
+      }
+      newShards[s] = new ConcurrentRedBlackTree(RedBlackTree.fromSorted(Arrays.copyOfRange(keys, from, to)));
+      from = to;
+    }
+    lowerBounds = newLowerBounds;
+    shards = newShards;
+  }
+
+  private int shardOf(int key) {
+    int index = Arrays.binarySearch(lowerBounds, key);
+    // Not a boundary itself: binarySearch returns -(insertion point) - 1, and the shard is the one before that
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private static int[] toLowerBounds(int[] splitPoints) {
+    int[] bounds = new int[splitPoints.length + 1];
+    bounds[0] = Integer.MIN_VALUE;
+    for (int i = 0; i < splitPoints.length; i++) {
+      if (splitPoints[i] <= bounds[i]) {
+        throw new IllegalArgumentException("Split points must be strictly increasing and above Integer.MIN_VALUE, but "
+            + splitPoints[i] + " is at index " + i);
+      }
+      bounds[i + 1] = splitPoints[i];
+    }
+    return bounds;
+  }
+
+  // Quantiles of the sample; repeated values are dropped, so a very skewed sample can yield fewer shards
+  private static int[] splitPointsFromSample(int[] sample, int shardCount) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Need at least one shard, got " + shardCount);
+    }
+    int[] sorted = sample.clone();
+    Arrays.sort(sorted);
+    int[] splitPoints = new int[shardCount - 1];
+    int count = 0;
+    for (int i = 1; i < shardCount && sorted.length > 0; i++) {
+      int candidate = sorted[(int) ((long) sorted.length * i / shardCount)];
+      boolean increasing = count == 0 ? candidate > Integer.MIN_VALUE : candidate > splitPoints[count - 1];
+      if (increasing) {
+        splitPoints[count++] = candidate;
+      }
+    }
+    return Arrays.copyOf(splitPoints, count);
+  }
+}
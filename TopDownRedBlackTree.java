@@ -0,0 +1,338 @@
+//A RedBlackTree variant that rebalances on the way down, following Julienne Walker's top-down insertion and deletion.
+//Insert splits 4-nodes (black nodes with two red children) and fixes red-red pairs while it descends, so the new
+//leaf can always be attached red below a black parent. Delete pushes a red node down ahead of it, so the node it
+//finally unlinks is red. Either way the tree is valid once the single descent ends: there is no second pass up,
+//no recursion, and therefore no parent pointer.
+//A node is a key, two children and a color: 32 bytes with compressed references, against 40 for a Node, and an
+//update writes only the nodes on its one path. The price is the order-statistic fields Node carries (size, height)
+//and that rebalancing happens eagerly, so an insert or delete rotates somewhat more often than the bottom-up tree.
+
+import java.util.function.IntConsumer;
+
+public final class TopDownRedBlackTree {
+
+  static final boolean RED = false;
+  static final boolean BLACK = true;
+
+  // Directions; a rotation in direction RIGHT moves the left child up
+  private static final boolean LEFT = false;
+  private static final boolean RIGHT = true;
+
+  private TNode root;
+  private int size;
+  // Stand-in parent of the root, so a rotation at the root needs no special case. Reused by every update.
+  private final TNode head = new TNode(0);
+  // Counters, or null while metrics are off
+  private TreeMetrics metrics;
+
+  public boolean search(int key) {
+    if (metrics != null) {
+      return countedSearch(key);
+    }
+    TNode node = root;
+    while (node != null) {
+      if (key == node.key) {
+        return true;
+      }
+      node = key < node.key ? node.left : node.right;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // -- Insertion ----------------------------------------------------------------------------------
+
+  //postcondition: key is in the tree
+  //throws IllegalArgumentException if key is already there (see insertIfAbsent)
+  public void insert(int key) {
+    if (!insertIfAbsent(key)) {
+      throw new IllegalArgumentException("BST already contains a node with key " + key);
+    }
+  }
+
+  //postcondition: key is in the tree; returns true if it was added and false if it was already there. The tree may
+  //have been rebalanced either way, which is harmless.
+  public boolean insertIfAbsent(int key) {
+    if (root == null) {
+      root = newNode(key);
+      root.color = BLACK;
+      size = 1;
+      return true;
+    }
+
+    boolean inserted = false;
+    // Great-grandparent, grandparent, parent and current node; head stands in above the root
+    TNode greatGrandparent = head;
+    TNode grandparent = null;
+    TNode parent = null;
+    TNode node = root;
+    head.right = root;
+    boolean dir = LEFT;
+    boolean lastDir = LEFT;
+
+    while (true) {
+      if (node == null) {
+        // Attach the new leaf red; the checks below make sure its parent can take it
+        node = newNode(key);
+        setChild(parent, dir, node);
+        inserted = true;
+      } else if (isRed(node.left) && isRed(node.right)) {
+        // Split a 4-node on the way down: push its redness up
+        node.color = RED;
+        node.left.color = BLACK;
+        node.right.color = BLACK;
+      }
+
+      // The split (or the new leaf) may have put a red node below a red parent; one or two rotations at the
+      // grandparent fix it, and can't cause a new violation higher up because that one was fixed on the way down
+      if (isRed(node) && isRed(parent)) {
+        boolean grandparentDir = greatGrandparent.right == grandparent;
+        TNode rotated = node == child(parent, lastDir)
+            ? rotate(grandparent, !lastDir)
+            : rotateTwice(grandparent, !lastDir);
+        setChild(greatGrandparent, grandparentDir, rotated);
+      }
+
+      if (node.key == key) {
+        break;
+      }
+
+      lastDir = dir;
+      dir = node.key < key;
+      if (grandparent != null) {
+        greatGrandparent = grandparent;
+      }
+      grandparent = parent;
+      parent = node;
+      node = child(node, dir);
+    }
+
+    root = head.right;
+    root.color = BLACK;
+    head.right = null;
+    if (inserted) {
+      size++;
+    }
+    return inserted;
+  }
+
+  // -- Deletion -----------------------------------------------------------------------------------
+
+  //postcondition: key is not in the tree
+  public void delete(int key) {
+    if (root == null) {
+      return;
+    }
+
+    // Grandparent, parent and current node, and the node holding key once the descent has passed it
+    TNode grandparent = null;
+    TNode parent = null;
+    TNode node = head;
+    TNode found = null;
+    head.right = root;
+    boolean dir = RIGHT;
+
+    // Walk all the way to the in-order predecessor of key (or to where key would be), keeping the current node red
+    while (child(node, dir) != null) {
+      boolean lastDir = dir;
+      grandparent = parent;
+      parent = node;
+      node = child(node, dir);
+      dir = node.key < key;
+      if (node.key == key) {
+        found = node;
+      }
+
+      if (!isRed(node) && !isRed(child(node, dir))) {
+        if (isRed(child(node, !dir))) {
+          // The red child on the other side is rotated above node, which leaves node with a red parent
+          TNode rotated = rotate(node, dir);
+          setChild(parent, lastDir, rotated);
+          parent = rotated;
+        } else {
+          TNode sibling = child(parent, !lastDir);
+          if (sibling != null) {
+            if (!isRed(child(sibling, !lastDir)) && !isRed(child(sibling, lastDir))) {
+              // Merge parent, node and sibling into a 4-node by recoloring
+              parent.color = BLACK;
+              sibling.color = RED;
+              node.color = RED;
+            } else {
+              // Borrow from the sibling: rotate one of its red children up
+              boolean parentDir = grandparent.right == parent;
+              TNode rotated = isRed(child(sibling, lastDir))
+                  ? rotateTwice(parent, lastDir)
+                  : rotate(parent, lastDir);
+              setChild(grandparent, parentDir, rotated);
+              node.color = RED;
+              rotated.color = RED;
+              rotated.left.color = BLACK;
+              rotated.right.color = BLACK;
+            }
+          }
+        }
+      }
+    }
+
+    // node is red (or the root): replace found's key with it and unlink it
+    if (found != null) {
+      found.key = node.key;
+      setChild(parent, parent.right == node, child(node, node.left == null));
+      size--;
+    }
+
+    root = head.right;
+    if (root != null) {
+      root.color = BLACK;
+    }
+    head.right = null;
+  }
+
+  // -- Helpers for insertion and deletion ---------------------------------------------------------
+
+  // Single rotation in direction dir; the old root becomes red and the new one black
+  private TNode rotate(TNode node, boolean dir) {
+    countRotation(dir == LEFT);
+    TNode pivot = child(node, !dir);
+    setChild(node, !dir, child(pivot, dir));
+    setChild(pivot, dir, node);
+    node.color = RED;
+    pivot.color = BLACK;
+    return pivot;
+  }
+
+  private TNode rotateTwice(TNode node, boolean dir) {
+    setChild(node, !dir, rotate(child(node, !dir), !dir));
+    return rotate(node, dir);
+  }
+
+  private static TNode child(TNode node, boolean dir) {
+    return dir == RIGHT ? node.right : node.left;
+  }
+
+  private static void setChild(TNode node, boolean dir, TNode child) {
+    if (dir == RIGHT) {
+      node.right = child;
+    } else {
+      node.left = child;
+    }
+  }
+
+  private static boolean isRed(TNode node) {
+    return node != null && node.color == RED;
+  }
+
+  private TNode newNode(int key) {
+    if (metrics != null) {
+      metrics.countNodeAllocation();
+    }
+    return new TNode(key);
+  }
+
+  // -- Metrics ------------------------------------------------------------------------------------
+  // Same counters as RedBlackTree.setMetrics, except the fixup cases and depths, which have no equivalent here.
+
+  //postcondition: from now on the tree counts its rotations, search comparisons and node allocations in metrics;
+  //null turns counting off
+  public void setMetrics(TreeMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public TreeMetrics metrics() {
+    return metrics;
+  }
+
+  private boolean countedSearch(int key) {
+    TNode node = root;
+    int comparisons = 0;
+    boolean found = false;
+    while (node != null) {
+      comparisons++;
+      if (key == node.key) {
+        found = true;
+        break;
+      }
+      node = key < node.key ? node.left : node.right;
+    }
+    metrics.countSearch(comparisons);
+    return found;
+  }
+
+  private void countRotation(boolean left) {
+    if (metrics != null) {
+      metrics.countRotation(left);
+    }
+  }
+
+  // -- Reading and diagnostics --------------------------------------------------------------------
+
+  //postcondition: action has been called with every key in ascending order. Without parent pointers the walk keeps
+  //its own stack, which is at most 2 * log2(n + 1) deep.
+  public void forEach(IntConsumer action) {
+    TNode[] stack = new TNode[2 * 32];
+    int top = 0;
+    TNode node = root;
+    while (node != null || top > 0) {
+      while (node != null) {
+        stack[top++] = node;
+        node = node.left;
+      }
+      node = stack[--top];
+      action.accept(node.key);
+      node = node.right;
+    }
+  }
+
+  //postcondition: number of nodes on the longest root-to-leaf path
+  public int height() {
+    return height(root);
+  }
+
+  // Recursion depth is the height of the tree
+  private static int height(TNode node) {
+    return node == null ? 0 : 1 + Math.max(height(node.left), height(node.right));
+  }
+
+  //postcondition: true if the root is black, no red node has a red child, all paths have the same black height
+  //and the keys are in search-tree order
+  public boolean isRedBlack() {
+    return !isRed(root) && checkSubtree(root, Long.MIN_VALUE, Long.MAX_VALUE) >= 0;
+  }
+
+  // Black height of the subtree, or -1 if it breaks a rule or the order
+  private static int checkSubtree(TNode node, long lower, long upper) {
+    if (node == null) {
+      return 0;
+    }
+    if (node.key <= lower || node.key >= upper) {
+      return -1;
+    }
+    if (isRed(node) && (isRed(node.left) || isRed(node.right))) {
+      return -1;
+    }
+    int left = checkSubtree(node.left, lower, node.key);
+    int right = checkSubtree(node.right, node.key, upper);
+    if (left < 0 || left != right) {
+      return -1;
+    }
+    return left + (node.color == BLACK ? 1 : 0);
+  }
+
+  private static final class TNode {
+    int key;
+    TNode left;
+    TNode right;
+    boolean color;
+
+    TNode(int key) {
+      this.key = key;
+    }
+  }
+}
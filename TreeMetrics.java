@@ -0,0 +1,278 @@
+//Counters of what RedBlackTree does internally: rotations, which fixup cases run (and with them how many nodes get
+//recolored), how deep fixups go, how many nodes a search compares against, and how many nodes inserts allocate
+//(as opposed to reusing recycled ones). Nothing is counted unless the metrics are attached with RedBlackTree.setMetrics; a tree without metrics
+//only pays a null check. The counters are LongAdders, which spread concurrent increments over several cells, so
+//one instance can be shared by many trees or threads (e.g. the readers of a ConcurrentRedBlackTree) without them
+//contending for one variable.
+//The counters can be read directly, over JMX (register) and in JDK Flight Recorder recordings: a
+//rbt.TreeMetrics event with all counters every second, and a rbt.Fixup event per fixup (off by default).
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+public final class TreeMetrics implements TreeMetricsMXBean {
+
+  static final int INSERT = 0;
+  static final int DELETE = 1;
+
+  // Color assignments each fixup case makes; case 4 of insert only rotates before falling through to case 5
+  private static final int[] INSERT_CASE_RECOLORS = {1, 0, 3, 0, 2};
+  private static final int[] DELETE_CASE_RECOLORS = {1, 2, 2, 1, 2, 3};
+
+  private final String name;
+  private final LongAdder leftRotations = new LongAdder();
+  private final LongAdder rightRotations = new LongAdder();
+  private final LongAdder[] insertCases = adders(INSERT_CASE_RECOLORS.length);
+  private final LongAdder[] deleteCases = adders(DELETE_CASE_RECOLORS.length);
+  private final LongAdder fixups = new LongAdder();
+  private final LongAdder fixupSteps = new LongAdder();
+  private final LongAccumulator maxFixupDepth = new LongAccumulator(Math::max, 0);
+  private final LongAdder searches = new LongAdder();
+  private final LongAdder searchComparisons = new LongAdder();
+  private final LongAdder nodeAllocations = new LongAdder();
+  private final Runnable periodicEvent = this::emitPeriodicEvent;
+  private ObjectName registeredName;
+
+  //postcondition: metrics with all counters at 0; name identifies them in JMX and JFR
+  public TreeMetrics(String name) {
+    this.name = name;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  private static LongAdder[] adders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  // -- Recording (called by RedBlackTree) ---------------------------------------------------------
+
+  void countRotation(boolean left) {
+    (left ? leftRotations : rightRotations).increment();
+  }
+
+  //precondition: 1 <= fixupCase <= 5 for INSERT, <= 6 for DELETE
+  void countCase(int operation, int fixupCase) {
+    (operation == INSERT ? insertCases : deleteCases)[fixupCase - 1].increment();
+  }
+
+  //postcondition: a fixup that took depth steps has been counted
+  void countFixup(int operation, int depth) {
+    fixups.increment();
+    fixupSteps.add(depth);
+    maxFixupDepth.accumulate(depth);
+    FixupEvent event = new FixupEvent();
+    if (event.shouldCommit()) {
+      event.tree = name;
+      event.operation = operation == INSERT ? "insert" : "delete";
+      event.depth = depth;
+      event.commit();
+    }
+  }
+
+  void countSearch(int comparisons) {
+    searches.increment();
+    searchComparisons.add(comparisons);
+  }
+
+  void countNodeAllocation() {
+    nodeAllocations.increment();
+  }
+
+  // -- Reading ------------------------------------------------------------------------------------
+
+  @Override
+  public long getLeftRotations() {
+    return leftRotations.sum();
+  }
+
+  @Override
+  public long getRightRotations() {
+    return rightRotations.sum();
+  }
+
+  @Override
+  public long[] getInsertFixupCases() {
+    return sums(insertCases);
+  }
+
+  @Override
+  public long[] getDeleteFixupCases() {
+    return sums(deleteCases);
+  }
+
+  @Override
+  public long getRecolors() {
+    long recolors = 0;
+    for (int i = 0; i < insertCases.length; i++) {
+      recolors += insertCases[i].sum() * INSERT_CASE_RECOLORS[i];
+    }
+    for (int i = 0; i < deleteCases.length; i++) {
+      recolors += deleteCases[i].sum() * DELETE_CASE_RECOLORS[i];
+    }
+    return recolors;
+  }
+
+  @Override
+  public long getFixups() {
+    return fixups.sum();
+  }
+
+  @Override
+  public long getFixupSteps() {
+    return fixupSteps.sum();
+  }
+
+  @Override
+  public long getMaxFixupDepth() {
+    return maxFixupDepth.get();
+  }
+
+  @Override
+  public long getSearches() {
+    return searches.sum();
+  }
+
+  @Override
+  public long getSearchComparisons() {
+    return searchComparisons.sum();
+  }
+
+  @Override
+  public double getComparisonsPerSearch() {
+    long count = searches.sum();
+    return count == 0 ? 0 : (double) searchComparisons.sum() / count;
+  }
+
+  @Override
+  public long getNodeAllocations() {
+    return nodeAllocations.sum();
+  }
+
+  // Not atomic: increments that race with it may survive
+  @Override
+  public void reset() {
+    leftRotations.reset();
+    rightRotations.reset();
+    for (LongAdder adder : insertCases) {
+      adder.reset();
+    }
+    for (LongAdder adder : deleteCases) {
+      adder.reset();
+    }
+    fixups.reset();
+    fixupSteps.reset();
+    maxFixupDepth.reset();
+    searches.reset();
+    searchComparisons.reset();
+    nodeAllocations.reset();
+  }
+
+  private static long[] sums(LongAdder[] adders) {
+    long[] sums = new long[adders.length];
+    for (int i = 0; i < adders.length; i++) {
+      sums[i] = adders[i].sum();
+    }
+    return sums;
+  }
+
+  // -- JMX and JFR --------------------------------------------------------------------------------
+
+  //postcondition: the metrics are visible in the platform MBean server as rbt:type=RedBlackTree,name=<name>,
+  //and in JFR recordings as periodic rbt.TreeMetrics events
+  public synchronized void register() throws JMException {
+    if (registeredName != null) {
+      return;
+    }
+    ObjectName objectName = ObjectName.getInstance("rbt:type=RedBlackTree,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    FlightRecorder.addPeriodicEvent(MetricsEvent.class, periodicEvent);
+    registeredName = objectName;
+  }
+
+  //postcondition: the metrics are no longer visible over JMX or JFR; counting goes on
+  public synchronized void unregister() throws JMException {
+    if (registeredName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.unregisterMBean(registeredName);
+    FlightRecorder.removePeriodicEvent(periodicEvent);
+    registeredName = null;
+  }
+
+  private void emitPeriodicEvent() {
+    MetricsEvent event = new MetricsEvent();
+    event.tree = name;
+    event.leftRotations = getLeftRotations();
+    event.rightRotations = getRightRotations();
+    event.recolors = getRecolors();
+    event.fixups = getFixups();
+    event.fixupSteps = getFixupSteps();
+    event.maxFixupDepth = getMaxFixupDepth();
+    event.searches = getSearches();
+    event.searchComparisons = getSearchComparisons();
+    event.nodeAllocations = getNodeAllocations();
+    event.commit();
+  }
+
+  @Name("rbt.Fixup")
+  @Label("Red-Black Tree Fixup")
+  @Description("One rebalancing pass after an insert or delete")
+  @Category("Red-Black Tree")
+  @Enabled(false)
+  static final class FixupEvent extends Event {
+    @Label("Tree")
+    String tree;
+    @Label("Operation")
+    String operation;
+    @Label("Depth")
+    @Description("Fixup steps, i.e. levels the fixup climbed")
+    int depth;
+  }
+
+  @Name("rbt.TreeMetrics")
+  @Label("Red-Black Tree Metrics")
+  @Description("Running totals of a TreeMetrics instance")
+  @Category("Red-Black Tree")
+  @Period("1 s")
+  static final class MetricsEvent extends Event {
+    @Label("Tree")
+    String tree;
+    @Label("Left Rotations")
+    long leftRotations;
+    @Label("Right Rotations")
+    long rightRotations;
+    @Label("Recolors")
+    long recolors;
+    @Label("Fixups")
+    long fixups;
+    @Label("Fixup Steps")
+    long fixupSteps;
+    @Label("Max Fixup Depth")
+    long maxFixupDepth;
+    @Label("Searches")
+    long searches;
+    @Label("Search Comparisons")
+    long searchComparisons;
+    @Label("Node Allocations")
+    long nodeAllocations;
+  }
+}
@@ -0,0 +1,39 @@
+//Management interface of TreeMetrics, as shown by JConsole, VisualVM or any other JMX client.
+
+public interface TreeMetricsMXBean {
+
+  long getLeftRotations();
+
+  long getRightRotations();
+
+  //postcondition: element i counts how often insert fixup case i + 1 ran (1 root, 2 black parent, 3 red uncle,
+  //4 inner child, 5 outer child)
+  long[] getInsertFixupCases();
+
+  //postcondition: element i counts how often delete fixup case i + 1 ran (1 root, 2 red sibling, 3 and 4 black
+  //sibling with black children and a red or black parent, 5 black outer nephew, 6 red outer nephew)
+  long[] getDeleteFixupCases();
+
+  //postcondition: number of color assignments made by the fixups
+  long getRecolors();
+
+  long getFixups();
+
+  //postcondition: number of fixup steps (recursive calls) of all fixups together
+  long getFixupSteps();
+
+  long getMaxFixupDepth();
+
+  long getSearches();
+
+  //postcondition: number of nodes compared against the searched key, summed over all searches
+  long getSearchComparisons();
+
+  double getComparisonsPerSearch();
+
+  //postcondition: number of nodes inserts allocated because no recycled node was available
+  long getNodeAllocations();
+
+  //postcondition: every counter is 0
+  void reset();
+}
@@ -0,0 +1,300 @@
+//Draws a RedBlackTree as text: the ASCII trunk style of printTree, a Graphviz DOT graph or nested JSON.
+//Walks the nodes with an explicit stack instead of recursion, so deep trees can't overflow the call stack, and
+//collects the output in a buffer that is handed to the Appendable in large pieces instead of one fragment at a time.
+//Depth and node-count limits replace every subtree that would cross them with a one-line summary of its size.
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public final class TreeRenderer {
+
+  public enum Format { ASCII, DOT, JSON }
+
+  // Characters collected before they are passed on to the output
+  private static final int BUFFER_CHARS = 8192;
+
+  // Trunk pieces of the ASCII style
+  private static final String BLANK = "    ";
+  private static final String BAR = "   |";
+  private static final String ROOT = "---";
+  private static final String UPPER = ".---";
+  private static final String LOWER = "`---";
+
+  private final Format format;
+  private final int maxDepth;
+  private final int maxNodes;
+
+  private TreeRenderer(Format format, int maxDepth, int maxNodes) {
+    this.format = format;
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+  }
+
+  //postcondition: a renderer for the given format without any limits
+  public static TreeRenderer of(Format format) {
+    return new TreeRenderer(format, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  //precondition: maxDepth >= 0
+  //postcondition: a renderer that draws nodes down to depth maxDepth (the root has depth 1) and summarizes
+  //every subtree below that
+  public TreeRenderer withMaxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("maxDepth must not be negative, but is " + maxDepth);
+    }
+    return new TreeRenderer(format, maxDepth, maxNodes);
+  }
+
+  //precondition: maxNodes >= 0
+  //postcondition: a renderer that draws at most maxNodes nodes and summarizes the subtrees it doesn't reach
+  public TreeRenderer withMaxNodes(int maxNodes) {
+    if (maxNodes < 0) {
+      throw new IllegalArgumentException("maxNodes must not be negative, but is " + maxNodes);
+    }
+    return new TreeRenderer(format, maxDepth, maxNodes);
+  }
+
+  //postcondition: the drawing of tree has been appended to out
+  public void render(RedBlackTree tree, Appendable out) throws IOException {
+    StringBuilder buffer = new StringBuilder(BUFFER_CHARS + 256);
+    Node root = tree.root();
+    switch (format) {
+      case ASCII:
+        renderAscii(root, buffer, out);
+        break;
+      case DOT:
+        renderDot(root, buffer, out);
+        break;
+      default:
+        renderJson(root, buffer, out);
+        break;
+    }
+    out.append(buffer);
+  }
+
+  //postcondition: the drawing of tree as a String
+  public String render(RedBlackTree tree) {
+    StringBuilder out = new StringBuilder();
+    try {
+      render(tree, out);
+    } catch (IOException e) {
+      // A StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  // Hands the buffer to out once it is full
+  private static void spill(StringBuilder buffer, Appendable out) throws IOException {
+    if (buffer.length() >= BUFFER_CHARS) {
+      out.append(buffer);
+      buffer.setLength(0);
+    }
+  }
+
+  // A subtree is summarized if its root would be deeper than maxDepth or past the node limit
+  private boolean cutOff(int depth, int drawn) {
+    return depth > maxDepth || drawn >= maxNodes;
+  }
+
+  private static char colorLetter(Node node) {
+    return node.color == RedBlackTree.BLACK ? 'B' : 'R';
+  }
+
+  // Every frame on the stack is an ancestor of the next one, so the stack never needs more room than this
+  private static int stackCapacity(Node root) {
+    return (root == null ? 0 : root.height) + 1;
+  }
+
+  // -- ASCII --------------------------------------------------------------------------------------
+
+  // Same lines as the old recursive printTree: right subtree above, left subtree below, a " NIL B" line for every
+  // missing child. trunks[d] is the piece of the prefix contributed by depth d (the root is depth 0 here).
+  private void renderAscii(Node root, StringBuilder buffer, Appendable out) throws IOException {
+    if (root == null) {
+      buffer.append(" NIL B\n");
+      return;
+    }
+    int capacity = stackCapacity(root);
+    Node[] path = new Node[capacity];
+    boolean[] isLeft = new boolean[capacity];
+    // 0: right subtree not drawn yet, 1: right subtree drawn, 2: node line drawn, left subtree pending
+    byte[] state = new byte[capacity];
+    String[] trunks = new String[capacity];
+    int drawn = 0;
+
+    int top = 0;
+    path[0] = root;
+    while (top >= 0) {
+      Node node = path[top];
+      if (state[top] == 0) {
+        trunks[top] = BLANK;
+        if (cutOff(top + 1, drawn)) {
+          appendTrunks(buffer, trunks, top, isLeft[top]);
+          buffer.append(" ... ").append(node.size).append(node.size == 1 ? " key\n" : " keys\n");
+          top--;
+        } else {
+          drawn++;
+          state[top] = 1;
+          top = pushAscii(node.right, true, path, isLeft, state, top, buffer);
+        }
+      } else if (state[top] == 1) {
+        appendTrunks(buffer, trunks, top, isLeft[top]);
+        buffer.append(' ').append(node.key).append(colorLetter(node)).append('\n');
+        trunks[top] = BAR;
+        state[top] = 2;
+        top = pushAscii(node.left, false, path, isLeft, state, top, buffer);
+      } else {
+        top--;
+      }
+      spill(buffer, out);
+    }
+  }
+
+  // Pushes child above top, or draws its NIL line right away if it is missing; returns the new top
+  private static int pushAscii(Node child, boolean left, Node[] path, boolean[] isLeft, byte[] state, int top,
+      StringBuilder buffer) {
+    if (child == null) {
+      buffer.append(" NIL B\n");
+      return top;
+    }
+    top++;
+    path[top] = child;
+    isLeft[top] = left;
+    state[top] = 0;
+    return top;
+  }
+
+  // Appends the prefix of a node line at the given depth, updating the trunks the way printTree did
+  private static void appendTrunks(StringBuilder buffer, String[] trunks, int depth, boolean isLeft) {
+    String parentTrunk = BLANK;
+    if (depth == 0) {
+      trunks[0] = ROOT;
+    } else if (isLeft) {
+      trunks[depth] = UPPER;
+      parentTrunk = BAR;
+    } else {
+      trunks[depth] = LOWER;
+      trunks[depth - 1] = parentTrunk;
+    }
+    for (int i = 0; i <= depth; i++) {
+      buffer.append(trunks[i]);
+    }
+    if (depth > 0) {
+      trunks[depth - 1] = parentTrunk;
+    }
+  }
+
+  // -- DOT ----------------------------------------------------------------------------------------
+
+  // Nodes are numbered in pre-order; missing children are left out, summarized subtrees become gray boxes
+  private void renderDot(Node root, StringBuilder buffer, Appendable out) throws IOException {
+    buffer.append("digraph RedBlackTree {\n");
+    buffer.append("  graph [ordering=out];\n");
+    buffer.append("  node [shape=circle, style=filled, fontcolor=white];\n");
+
+    // Pre-order keeps at most one pending right child per level, plus the node being visited
+    int capacity = stackCapacity(root) + 1;
+    Node[] nodes = new Node[capacity];
+    int[] parentIds = new int[capacity];
+    int[] depths = new int[capacity];
+    int top = -1;
+    if (root != null) {
+      top = 0;
+      nodes[0] = root;
+      parentIds[0] = -1;
+      depths[0] = 1;
+    }
+    int nextId = 0;
+    int drawn = 0;
+
+    while (top >= 0) {
+      Node node = nodes[top];
+      int parentId = parentIds[top];
+      int depth = depths[top];
+      top--;
+
+      int id = nextId++;
+      if (cutOff(depth, drawn)) {
+        buffer.append("  n").append(id).append(" [label=\"").append(node.size).append(node.size == 1 ? " key" : " keys")
+            .append("\", shape=box, fillcolor=gray];\n");
+      } else {
+        drawn++;
+        buffer.append("  n").append(id).append(" [label=\"").append(node.key).append("\", fillcolor=")
+            .append(node.color == RedBlackTree.BLACK ? "black" : "red").append("];\n");
+        // Right first, so the left subtree comes out first
+        if (node.right != null) {
+          top++;
+          nodes[top] = node.right;
+          parentIds[top] = id;
+          depths[top] = depth + 1;
+        }
+        if (node.left != null) {
+          top++;
+          nodes[top] = node.left;
+          parentIds[top] = id;
+          depths[top] = depth + 1;
+        }
+      }
+      if (parentId >= 0) {
+        buffer.append("  n").append(parentId).append(" -> n").append(id).append(";\n");
+      }
+      spill(buffer, out);
+    }
+    buffer.append("}\n");
+  }
+
+  // -- JSON ---------------------------------------------------------------------------------------
+
+  // {"key":5,"color":"B","left":{...},"right":null}; a summarized subtree is {"truncated":<keys>}
+  private void renderJson(Node root, StringBuilder buffer, Appendable out) throws IOException {
+    if (root == null) {
+      buffer.append("null\n");
+      return;
+    }
+    int capacity = stackCapacity(root);
+    Node[] path = new Node[capacity];
+    // 0: nothing written yet, 1: right child pending, 2: object can be closed
+    byte[] state = new byte[capacity];
+    int drawn = 0;
+
+    int top = 0;
+    path[0] = root;
+    while (top >= 0) {
+      Node node = path[top];
+      if (state[top] == 0) {
+        if (cutOff(top + 1, drawn)) {
+          buffer.append("{\"truncated\":").append(node.size).append('}');
+          top--;
+        } else {
+          drawn++;
+          buffer.append("{\"key\":").append(node.key).append(",\"color\":\"").append(colorLetter(node))
+              .append("\",\"left\":");
+          state[top] = 1;
+          top = pushJson(node.left, path, state, top, buffer);
+        }
+      } else if (state[top] == 1) {
+        buffer.append(",\"right\":");
+        state[top] = 2;
+        top = pushJson(node.right, path, state, top, buffer);
+      } else {
+        buffer.append('}');
+        top--;
+      }
+      spill(buffer, out);
+    }
+    buffer.append('\n');
+  }
+
+  // Pushes child above top, or writes null right away if it is missing; returns the new top
+  private static int pushJson(Node child, Node[] path, byte[] state, int top, StringBuilder buffer) {
+    if (child == null) {
+      buffer.append("null");
+      return top;
+    }
+    top++;
+    path[top] = child;
+    state[top] = 0;
+    return top;
+  }
+}
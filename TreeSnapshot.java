@@ -0,0 +1,354 @@
+//Saves a RedBlackTree to a compact binary file and loads it back in linear time, without a single rotation.
+//
+//File layout (integers are big-endian):
+//  magic "RBTS" (4 bytes) | version (1 byte) | flags (1 byte) | key count (4 bytes)
+//  keys: the smallest key as a zigzag varint, then every other key as a varint of its gap to the previous one
+//  shape (only if the SHAPE flag is set): 3 bits per node in pre-order (has left child, has right child, is black),
+//    packed starting at the lowest bit of each byte
+//  CRC32 of everything before it (4 bytes)
+//Sorted keys close together need a byte or two each. Without the shape, a load builds a perfectly balanced tree
+//(see RedBlackTree.fromSorted); with it, the load restores exactly the saved tree, colors included.
+//Loading maps the file instead of reading it through a stream, so it runs at the speed of the disk and the decoder.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public final class TreeSnapshot {
+
+  private static final int MAGIC = 0x52425453;
+  private static final byte VERSION = 1;
+  private static final int SHAPE = 1;
+  private static final int HEADER_BYTES = 10;
+  private static final int TRAILER_BYTES = 4;
+
+  // Size of the write buffer; it is flushed once fewer bytes than the largest varint are left
+  private static final int BUFFER_BYTES = 1 << 20;
+  private static final int MAX_VARINT_BYTES = 5;
+
+  private TreeSnapshot() {
+  }
+
+  //precondition: tree is not a multiset (the format has no counts)
+  //postcondition: file holds a snapshot of tree (with its exact shape and colors if keepShape). The snapshot is
+  //written to a temporary file next to it first and then moved into place, so a crash never leaves a torn file,
+  //and the directory is synced after the move, so once this returns the new snapshot survives a power loss.
+  public static void write(RedBlackTree tree, Path file, boolean keepShape) throws IOException {
+    if (tree.isMultiset()) {
+      throw new IllegalArgumentException("Snapshots can't store the counts of a multiset");
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      Writer writer = new Writer(channel);
+      writer.buffer.putInt(MAGIC).put(VERSION).put((byte) (keepShape ? SHAPE : 0)).putInt(tree.size());
+      writeKeys(tree, writer);
+      if (keepShape) {
+        writeShape(tree.root(), writer);
+      }
+      writer.finish();
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory(file.toAbsolutePath().getParent());
+  }
+
+  // Makes the directory's entries (a rename, a newly created file) durable, which syncing the files themselves
+  // doesn't do. Windows can't open a directory for this, but commits renames to disk on its own.
+  static void syncDirectory(Path directory) throws IOException {
+    if (System.getProperty("os.name").startsWith("Windows")) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+
+  //postcondition: the tree saved in file
+  //throws IOException if the file is not a snapshot, is truncated, fails its checksum or holds a shape that breaks
+  //the red-black rules
+  public static RedBlackTree read(Path file) throws IOException {
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is too large to map (" + length + " bytes)");
+      }
+      if (length < HEADER_BYTES + TRAILER_BYTES) {
+        throw new IOException("Snapshot " + file + " is truncated");
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+    try {
+      return decode(mapped, file);
+    } catch (IndexOutOfBoundsException e) {
+      // Ran off the end of the buffer (java.nio's underflow exception is one of these)
+      throw new IOException("Snapshot " + file + " is corrupt", e);
+    } finally {
+      // Unmap right away, so the file can be replaced by the next snapshot
+      OffHeapRedBlackTree.freeBuffer(mapped);
+    }
+  }
+
+  // -- Writing ------------------------------------------------------------------------------------
+
+  private static void writeKeys(RedBlackTree tree, Writer writer) throws IOException {
+    RedBlackTree.Cursor cursor = tree.cursor();
+    if (!cursor.seekFirst()) {
+      return;
+    }
+    int previous = cursor.key();
+    writer.putVarint((previous << 1) ^ (previous >> 31));
+    while (cursor.next()) {
+      int key = cursor.key();
+      // The gap is at least 1 and at most 2^32 - 1, so it fits an unsigned int
+      writer.putVarint(key - previous);
+      previous = key;
+    }
+  }
+
+  // Iterative pre-order walk; a pending right child waits on the stack for every level above it
+  private static void writeShape(Node root, Writer writer) throws IOException {
+    if (root == null) {
+      return;
+    }
+    Node[] stack = new Node[root.height + 1];
+    int top = 0;
+    stack[0] = root;
+    int bits = 0;
+    int bitCount = 0;
+    while (top >= 0) {
+      Node node = stack[top--];
+      bits |= (node.left != null ? 1 : 0) << bitCount;
+      bits |= (node.right != null ? 2 : 0) << bitCount;
+      bits |= (node.color == RedBlackTree.BLACK ? 4 : 0) << bitCount;
+      bitCount += 3;
+      if (bitCount >= 8) {
+        writer.putByte(bits);
+        bits >>>= 8;
+        bitCount -= 8;
+      }
+      if (node.right != null) {
+        stack[++top] = node.right;
+      }
+      if (node.left != null) {
+        stack[++top] = node.left;
+      }
+    }
+    if (bitCount > 0) {
+      writer.putByte(bits);
+    }
+  }
+
+  // Encodes into a large buffer and keeps a running checksum of everything it hands to the channel
+  private static final class Writer {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+
+    Writer(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    // Unsigned LEB128: 7 bits per byte, lowest group first, high bit set on all but the last byte
+    void putVarint(int value) throws IOException {
+      if (buffer.remaining() < MAX_VARINT_BYTES) {
+        drain();
+      }
+      while ((value & ~0x7F) != 0) {
+        buffer.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      buffer.put((byte) value);
+    }
+
+    void putByte(int value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) value);
+    }
+
+    // Appends the checksum and writes out whatever is left
+    void finish() throws IOException {
+      drain();
+      buffer.putInt((int) checksum.getValue());
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      checksum.update(buffer.duplicate());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  // -- Reading ------------------------------------------------------------------------------------
+
+  private static RedBlackTree decode(ByteBuffer buffer, Path file) throws IOException {
+    int end = buffer.limit() - TRAILER_BYTES;
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.duplicate().limit(end));
+    if ((int) checksum.getValue() != buffer.getInt(end)) {
+      throw new IOException("Snapshot " + file + " is corrupt: checksum mismatch");
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException(file + " is not a tree snapshot");
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException("Snapshot " + file + " has unsupported version " + version);
+    }
+    int flags = buffer.get();
+    int count = buffer.getInt();
+    buffer.limit(end);
+    if (count < 0 || count > end - HEADER_BYTES) {
+      throw new IOException("Snapshot " + file + " is corrupt: impossible key count " + count);
+    }
+
+    int[] keys = readKeys(buffer, count, file);
+    RedBlackTree tree = (flags & SHAPE) != 0
+        ? RedBlackTree.withRoot(readShape(buffer, keys, file))
+        : RedBlackTree.fromSorted(keys);
+    if (buffer.hasRemaining()) {
+      throw new IOException("Snapshot " + file + " is corrupt: " + buffer.remaining() + " bytes left over");
+    }
+    return tree;
+  }
+
+  private static int[] readKeys(ByteBuffer buffer, int count, Path file) throws IOException {
+    int[] keys = new int[count];
+    if (count == 0) {
+      return keys;
+    }
+    int zigzag = getVarint(buffer);
+    long key = (zigzag >>> 1) ^ -(zigzag & 1);
+    keys[0] = (int) key;
+    for (int i = 1; i < count; i++) {
+      long gap = getVarint(buffer) & 0xFFFFFFFFL;
+      key += gap;
+      if (gap == 0 || key > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot " + file + " is corrupt: keys are not strictly increasing at index " + i);
+      }
+      keys[i] = (int) key;
+    }
+    return keys;
+  }
+
+  private static int getVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  // Rebuilds the saved shape from its pre-order bits, fills in the keys in order, recomputes sizes and heights
+  // children first (reverse pre-order visits every child before its parent) and finally checks the red-black rules
+  private static Node readShape(ByteBuffer buffer, int[] keys, Path file) throws IOException {
+    int count = keys.length;
+    if (count == 0) {
+      return null;
+    }
+    Node[] preOrder = new Node[count];
+    // Open child slots: the parent and whether it's the left one. The root's slot has no parent.
+    int capacity = 64;
+    Node[] slotParents = new Node[capacity];
+    boolean[] slotIsLeft = new boolean[capacity];
+    int top = 0;
+    int bits = 0;
+    int bitCount = 0;
+
+    for (int i = 0; i < count; i++) {
+      if (top < 0) {
+        throw new IOException("Snapshot " + file + " is corrupt: shape ends after " + i + " nodes");
+      }
+      if (bitCount < 3) {
+        bits |= (buffer.get() & 0xFF) << bitCount;
+        bitCount += 8;
+      }
+      Node node = new Node(0);
+      node.color = (bits & 4) != 0 ? RedBlackTree.BLACK : RedBlackTree.RED;
+      Node parent = slotParents[top];
+      if (parent != null) {
+        node.parent = parent;
+        if (slotIsLeft[top]) {
+          parent.left = node;
+        } else {
+          parent.right = node;
+        }
+      }
+      top--;
+      preOrder[i] = node;
+
+      if (top + 2 >= capacity) {
+        capacity *= 2;
+        slotParents = Arrays.copyOf(slotParents, capacity);
+        slotIsLeft = Arrays.copyOf(slotIsLeft, capacity);
+      }
+      // Right slot below the left one, so the left subtree comes next in pre-order
+      if ((bits & 2) != 0) {
+        top++;
+        slotParents[top] = node;
+        slotIsLeft[top] = false;
+      }
+      if ((bits & 1) != 0) {
+        top++;
+        slotParents[top] = node;
+        slotIsLeft[top] = true;
+      }
+      bits >>>= 3;
+      bitCount -= 3;
+    }
+    if (top >= 0) {
+      throw new IOException("Snapshot " + file + " is corrupt: shape has more than " + count + " nodes");
+    }
+
+    // In-order walk over the parent pointers
+    Node node = preOrder[0];
+    while (node.left != null) {
+      node = node.left;
+    }
+    for (int i = 0; i < count; i++) {
+      node.key = keys[i];
+      if (node.right != null) {
+        node = node.right;
+        while (node.left != null) {
+          node = node.left;
+        }
+      } else {
+        while (node.parent != null && node == node.parent.right) {
+          node = node.parent;
+        }
+        node = node.parent;
+      }
+    }
+
+    for (int i = count - 1; i >= 0; i--) {
+      RedBlackTree.updateAugmentedFields(preOrder[i]);
+    }
+
+    // A file can pass its checksum and still hold a shape that was wrong when it was written; loading that would
+    // leave later fixups working on a broken tree
+    if (!TreeStats.of(preOrder[0]).isRedBlack()) {
+      throw new IOException("Snapshot " + file + " is corrupt: its shape breaks the red-black rules");
+    }
+    return preOrder[0];
+  }
+}
@@ -0,0 +1,206 @@
+//Everything RedBlackTree's diagnostics report, gathered in one iterative pass over the nodes.
+//Uses an explicit stack instead of recursion, so degenerate (unbalanced) trees can't overflow the call stack,
+//and never prints anything.
+
+import java.util.Arrays;
+
+public final class TreeStats {
+
+  private final int nodeCount;
+  private final int height;
+  private final int blackHeight;
+  private final int minLeafDepth;
+  private final int[] shortestPath;
+
+  // The five red-black rules
+  private final boolean everyNodeRedOrBlack;
+  private final boolean rootIsBlack;
+  private final boolean leavesAreBlack;
+  private final boolean redNodesHaveBlackChildren;
+  private final boolean blackHeightsEqual;
+
+  // Keys are in search-tree order and every child points back to its parent
+  private final boolean wellFormed;
+
+  private TreeStats(int nodeCount, int height, int blackHeight, int minLeafDepth, int[] shortestPath,
+      boolean rootIsBlack, boolean redNodesHaveBlackChildren, boolean blackHeightsEqual, boolean wellFormed) {
+    this.nodeCount = nodeCount;
+    this.height = height;
+    this.blackHeight = blackHeight;
+    this.minLeafDepth = minLeafDepth;
+    this.shortestPath = shortestPath;
+    // Rules 1 and 3 hold by construction: a node's color is a boolean, and leaves are null references,
+    // which every check treats as black.
+    this.everyNodeRedOrBlack = true;
+    this.leavesAreBlack = true;
+    this.rootIsBlack = rootIsBlack;
+    this.redNodesHaveBlackChildren = redNodesHaveBlackChildren;
+    this.blackHeightsEqual = blackHeightsEqual;
+    this.wellFormed = wellFormed;
+  }
+
+  //postcondition: statistics of the tree rooted at root, computed in O(n) time and O(height) extra space
+  static TreeStats of(Node root) {
+    if (root == null) {
+      return new TreeStats(0, 0, 0, 0, new int[0], true, true, true, true);
+    }
+
+    int nodeCount = 0;
+    int height = 0;
+    int minLeafDepth = Integer.MAX_VALUE;
+    Node shallowestLeaf = null;
+    // Black nodes on the first root-to-null path seen; every other path has to match it
+    int pathBlackHeight = -1;
+    int maxPathBlackHeight = 0;
+    boolean redNodesHaveBlackChildren = true;
+    boolean blackHeightsEqual = true;
+    boolean wellFormed = root.parent == null;
+
+    // Explicit pre-order stack; every entry remembers its depth, the black nodes above and including it,
+    // and the open key interval the search-tree order allows for it
+    int capacity = 64;
+    Node[] nodes = new Node[capacity];
+    int[] depths = new int[capacity];
+    int[] blackDepths = new int[capacity];
+    long[] lowerBounds = new long[capacity];
+    long[] upperBounds = new long[capacity];
+    int top = 0;
+    nodes[0] = root;
+    depths[0] = 1;
+    blackDepths[0] = isBlack(root) ? 1 : 0;
+    lowerBounds[0] = Long.MIN_VALUE;
+    upperBounds[0] = Long.MAX_VALUE;
+
+    while (top >= 0) {
+      Node node = nodes[top];
+      int depth = depths[top];
+      int blackDepth = blackDepths[top];
+      long lower = lowerBounds[top];
+      long upper = upperBounds[top];
+      top--;
+
+      nodeCount++;
+      height = Math.max(height, depth);
+
+      if (node.key <= lower || node.key >= upper) {
+        wellFormed = false;
+      }
+      if (!isBlack(node) && (!isBlack(node.left) || !isBlack(node.right))) {
+        redNodesHaveBlackChildren = false;
+      }
+
+      if (node.left == null && node.right == null && depth < minLeafDepth) {
+        minLeafDepth = depth;
+        shallowestLeaf = node;
+      }
+
+      // Each missing child ends one root-to-leaf path
+      if (node.left == null || node.right == null) {
+        if (pathBlackHeight < 0) {
+          pathBlackHeight = blackDepth;
+        } else if (pathBlackHeight != blackDepth) {
+          blackHeightsEqual = false;
+        }
+        maxPathBlackHeight = Math.max(maxPathBlackHeight, blackDepth);
+      }
+
+      if (top + 2 >= capacity) {
+        capacity *= 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        blackDepths = Arrays.copyOf(blackDepths, capacity);
+        lowerBounds = Arrays.copyOf(lowerBounds, capacity);
+        upperBounds = Arrays.copyOf(upperBounds, capacity);
+      }
+
+      // Push right first so the left subtree is visited first
+      for (int side = 0; side < 2; side++) {
+        Node child = side == 0 ? node.right : node.left;
+        if (child == null) {
+          continue;
+        }
+        if (child.parent != node) {
+          wellFormed = false;
+        }
+        top++;
+        nodes[top] = child;
+        depths[top] = depth + 1;
+        blackDepths[top] = blackDepth + (isBlack(child) ? 1 : 0);
+        lowerBounds[top] = side == 0 ? node.key : lower;
+        upperBounds[top] = side == 0 ? upper : node.key;
+      }
+    }
+
+    // Walk back up from the shallowest leaf to recover the shortest path
+    int[] shortestPath = new int[minLeafDepth];
+    Node node = shallowestLeaf;
+    for (int i = minLeafDepth - 1; i >= 0 && node != null; i--) {
+      shortestPath[i] = node.key;
+      node = node.parent;
+    }
+
+    return new TreeStats(nodeCount, height, maxPathBlackHeight, minLeafDepth, shortestPath, isBlack(root),
+        redNodesHaveBlackChildren, blackHeightsEqual, wellFormed);
+  }
+
+  private static boolean isBlack(Node node) {
+    return node == null || node.color == RedBlackTree.BLACK;
+  }
+
+  //postcondition: true if all five red-black rules hold
+  public boolean isRedBlack() {
+    return everyNodeRedOrBlack && rootIsBlack && leavesAreBlack && redNodesHaveBlackChildren && blackHeightsEqual;
+  }
+
+  public int nodeCount() {
+    return nodeCount;
+  }
+
+  //postcondition: number of nodes on the longest root-to-leaf path, i.e. the maximum depth
+  public int height() {
+    return height;
+  }
+
+  //postcondition: black nodes on a root-to-leaf path (the largest such count if the paths disagree)
+  public int blackHeight() {
+    return blackHeight;
+  }
+
+  //postcondition: number of nodes on the shortest path from the root to a node without children
+  public int minDepth() {
+    return minLeafDepth;
+  }
+
+  public int maxDepth() {
+    return height;
+  }
+
+  //postcondition: keys on the shortest root-to-leaf path, starting at the root
+  public int[] shortestPath() {
+    return shortestPath.clone();
+  }
+
+  public boolean everyNodeRedOrBlack() {
+    return everyNodeRedOrBlack;
+  }
+
+  public boolean rootIsBlack() {
+    return rootIsBlack;
+  }
+
+  public boolean leavesAreBlack() {
+    return leavesAreBlack;
+  }
+
+  public boolean redNodesHaveBlackChildren() {
+    return redNodesHaveBlackChildren;
+  }
+
+  public boolean blackHeightsEqual() {
+    return blackHeightsEqual;
+  }
+
+  public boolean isWellFormed() {
+    return wellFormed;
+  }
+}
@@ -0,0 +1,132 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// RedBlackTree.insertAll/deleteAll against calling insert and delete once per key. The tree holds the even keys
+// below 2 * size; every operation adds a batch of absent (odd) keys and takes it out again, so the tree keeps its
+// size. The keys of a batch come in random order either way, and are either a run of consecutive odd keys (DENSE,
+// where the finger search of insertAll saves the most) or spread over the whole tree (SCATTERED).
+// Compare the scores of the two benchmarks for the same parameters; both do the same inserts and deletes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BatchBenchmark {
+
+  // Batches cycled through, so successive operations touch different parts of the tree
+  private static final int BATCHES = 16;
+
+  // See RedBlackTreeSet for why the tree is called through method handles
+  private static final MethodHandle NEW_TREE;
+  private static final MethodHandle INSERT;
+  private static final MethodHandle DELETE;
+  private static final MethodHandle INSERT_ALL;
+  private static final MethodHandle DELETE_ALL;
+
+  static {
+    try {
+      Class<?> treeClass = Class.forName("RedBlackTree");
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      NEW_TREE = lookup.findConstructor(treeClass, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Object.class));
+      INSERT = lookup.findVirtual(treeClass, "insert", MethodType.methodType(void.class, int.class))
+          .asType(MethodType.methodType(void.class, Object.class, int.class));
+      DELETE = lookup.findVirtual(treeClass, "delete", MethodType.methodType(void.class, int.class))
+          .asType(MethodType.methodType(void.class, Object.class, int.class));
+      INSERT_ALL = lookup.findVirtual(treeClass, "insertAll", MethodType.methodType(BitSet.class, int[].class))
+          .asType(MethodType.methodType(BitSet.class, Object.class, int[].class));
+      DELETE_ALL = lookup.findVirtual(treeClass, "deleteAll", MethodType.methodType(BitSet.class, int[].class))
+          .asType(MethodType.methodType(BitSet.class, Object.class, int[].class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"100", "1000", "10000"})
+  public int batchSize;
+
+  @Param({"DENSE", "SCATTERED"})
+  public String spread;
+
+  private Object tree;
+  private int[][] batches;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void build() throws Throwable {
+    tree = (Object) NEW_TREE.invokeExact();
+    for (int key : KeyOrder.RANDOM.keys(size)) {
+      INSERT.invokeExact(tree, key);
+    }
+    Random random = new Random(7);
+    batches = new int[BATCHES][];
+    for (int b = 0; b < BATCHES; b++) {
+      int[] batch = new int[batchSize];
+      if (spread.equals("DENSE")) {
+        int first = random.nextInt(size - batchSize);
+        for (int i = 0; i < batchSize; i++) {
+          batch[i] = 2 * (first + i) + 1;
+        }
+      } else {
+        // Distinct odd keys, one from each of batchSize equal slices of the tree
+        int slice = size / batchSize;
+        for (int i = 0; i < batchSize; i++) {
+          batch[i] = 2 * (i * slice + random.nextInt(slice)) + 1;
+        }
+      }
+      for (int i = batchSize - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int swap = batch[i];
+        batch[i] = batch[j];
+        batch[j] = swap;
+      }
+      batches[b] = batch;
+    }
+  }
+
+  private int[] nextBatch() {
+    return batches[next++ & (BATCHES - 1)];
+  }
+
+  @Benchmark
+  public void insertAllThenDeleteAll(Blackhole blackhole) throws Throwable {
+    int[] batch = nextBatch();
+    blackhole.consume((BitSet) INSERT_ALL.invokeExact(tree, batch));
+    blackhole.consume((BitSet) DELETE_ALL.invokeExact(tree, batch));
+  }
+
+  @Benchmark
+  public Object insertLoopThenDeleteLoop() throws Throwable {
+    int[] batch = nextBatch();
+    for (int key : batch) {
+      INSERT.invokeExact(tree, key);
+    }
+    for (int key : batch) {
+      DELETE.invokeExact(tree, key);
+    }
+    return tree;
+  }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Filling an empty set, and then emptying it again, in the chosen key order
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BuildBenchmark {
+
+  @Param({"RedBlackTree", "TopDownRedBlackTree", "TreeSet"})
+  public String implementation;
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"SEQUENTIAL", "RANDOM", "ADVERSARIAL"})
+  public KeyOrder order;
+
+  private int[] keys;
+
+  @Setup(Level.Trial)
+  public void generateKeys() {
+    keys = order.keys(size);
+  }
+
+  @Benchmark
+  public IntSet insertAll() {
+    IntSet set = IntSet.create(implementation);
+    for (int key : keys) {
+      set.insert(key);
+    }
+    return set;
+  }
+
+  // Deletes allocate nothing (a deleted black leaf is stood in for by the tree's shared terminator), so this should
+  // allocate as many bytes per operation as insertAll
+  @Benchmark
+  public IntSet insertAllThenDeleteAll() {
+    IntSet set = insertAll();
+    for (int key : keys) {
+      set.delete(key);
+    }
+    return set;
+  }
+}
@@ -0,0 +1,113 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Read-heavy mixes on one tree shared by every benchmark thread, to see how throughput scales with threads.
+// ConcurrentRedBlackTree (optimistic reads, serialized writers) is compared with a RedBlackTree behind a single
+// monitor. Each operation is a search with probability readPercent, otherwise an insert-then-delete of an absent
+// key, so the tree keeps its size. Throughput is summed over all threads; run once per thread count, e.g.
+//   for t in 1 2 4 8 16; do java -jar benchmarks/target/benchmarks.jar ConcurrentBenchmark -t $t; done
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SharedTree {
+
+    @Param({"ConcurrentRedBlackTree", "SynchronizedRedBlackTree"})
+    public String implementation;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"90", "99", "100"})
+    public int readPercent;
+
+    IntSet set;
+
+    @Setup(Level.Trial)
+    public void build() {
+      set = implementation.equals("ConcurrentRedBlackTree")
+          ? new ConcurrentRedBlackTreeSet()
+          : new SynchronizedSet(IntSet.create("RedBlackTree"));
+      for (int key : KeyOrder.RANDOM.keys(size)) {
+        set.insert(key);
+      }
+    }
+  }
+
+  // Every thread has its own ring of probes, and its own odd keys to insert and delete, so writers never collide
+  @State(Scope.Thread)
+  public static class Probes {
+
+    int[] probes;
+    int next;
+    int thread;
+    int threads;
+
+    @Setup(Level.Trial)
+    public void generate(SharedTree shared, ThreadParams params) {
+      thread = params.getThreadIndex();
+      threads = params.getThreadCount();
+      Random random = new Random(7 + thread);
+      probes = new int[TreeState.PROBES];
+      for (int i = 0; i < probes.length; i++) {
+        probes[i] = random.nextInt(2 * shared.size);
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean mixed(SharedTree shared, Probes probes) {
+    int probe = probes.probes[probes.next++ & TreeState.PROBE_MASK];
+    // The probe ring is random, so the probe itself can decide the operation without a second random number
+    if ((probe >>> 1) % 100 < shared.readPercent) {
+      return shared.set.contains(probe);
+    }
+    // An odd key that only this thread uses
+    int key = 2 * ((probe >>> 1) / probes.threads * probes.threads + probes.thread) + 1;
+    shared.set.insert(key);
+    shared.set.delete(key);
+    return true;
+  }
+
+  private static final class SynchronizedSet implements IntSet {
+    private final IntSet set;
+
+    SynchronizedSet(IntSet set) {
+      this.set = set;
+    }
+
+    @Override
+    public synchronized void insert(int key) {
+      set.insert(key);
+    }
+
+    @Override
+    public synchronized void delete(int key) {
+      set.delete(key);
+    }
+
+    @Override
+    public synchronized boolean contains(int key) {
+      return set.contains(key);
+    }
+  }
+}
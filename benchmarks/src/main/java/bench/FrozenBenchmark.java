@@ -0,0 +1,103 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Random lookups in a live RedBlackTree and in its frozen copy. With 40-byte nodes the live tree of the smallest size
+// fits in L2, the middle one in L3 and the largest one only in DRAM; the frozen copies take a tenth of that.
+// Half of the probes are present (even) keys, half are absent (odd) ones. See RedBlackTreeSet for the method handles.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FrozenBenchmark {
+
+  private static final int PROBES = 1 << 16;
+  private static final int PROBE_MASK = PROBES - 1;
+
+  private static final MethodHandle FROM_SORTED;
+  private static final MethodHandle FREEZE;
+  private static final MethodHandle SEARCH;
+  private static final MethodHandle CONTAINS;
+  private static final MethodHandle FLOOR;
+
+  static {
+    try {
+      Class<?> treeClass = Class.forName("RedBlackTree");
+      Class<?> frozenClass = Class.forName("FrozenRedBlackTree");
+      Class<?> nodeClass = Class.forName("Node");
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      FROM_SORTED = lookup.findStatic(treeClass, "fromSorted", MethodType.methodType(treeClass, int[].class))
+          .asType(MethodType.methodType(Object.class, int[].class));
+      FREEZE = lookup.findVirtual(treeClass, "freeze", MethodType.methodType(frozenClass))
+          .asType(MethodType.methodType(Object.class, Object.class));
+      SEARCH = lookup.findVirtual(treeClass, "search", MethodType.methodType(nodeClass, int.class))
+          .asType(MethodType.methodType(Object.class, Object.class, int.class));
+      CONTAINS = lookup.findVirtual(frozenClass, "contains", MethodType.methodType(boolean.class, int.class))
+          .asType(MethodType.methodType(boolean.class, Object.class, int.class));
+      FLOOR = lookup.findVirtual(frozenClass, "floor", MethodType.methodType(long.class, int.class))
+          .asType(MethodType.methodType(long.class, Object.class, int.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Param({"8192", "262144", "16777216"})
+  public int size;
+
+  private Object tree;
+  private Object frozen;
+  private int[] probes;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void build() throws Throwable {
+    int[] keys = new int[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = 2 * i;
+    }
+    tree = (Object) FROM_SORTED.invokeExact(keys);
+    frozen = (Object) FREEZE.invokeExact(tree);
+    Random random = new Random(7);
+    probes = new int[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      probes[i] = random.nextInt(2 * size);
+    }
+  }
+
+  private int nextProbe() {
+    return probes[next++ & PROBE_MASK];
+  }
+
+  @Benchmark
+  public boolean liveSearch() throws Throwable {
+    return (Object) SEARCH.invokeExact(tree, nextProbe()) != null;
+  }
+
+  @Benchmark
+  public boolean frozenContains() throws Throwable {
+    return (boolean) CONTAINS.invokeExact(frozen, nextProbe());
+  }
+
+  @Benchmark
+  public long frozenFloor() throws Throwable {
+    return (long) FLOOR.invokeExact(frozen, nextProbe());
+  }
+}
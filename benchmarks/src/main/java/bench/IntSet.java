@@ -0,0 +1,46 @@
+package bench;
+
+import java.util.TreeSet;
+
+// The operations the benchmarks need, over either the tree under test or the java.util baseline
+interface IntSet {
+
+  void insert(int key);
+
+  void delete(int key);
+
+  boolean contains(int key);
+
+  //postcondition: an empty set of the given implementation ("RedBlackTree", "TopDownRedBlackTree" or "TreeSet")
+  static IntSet create(String implementation) {
+    switch (implementation) {
+      case "RedBlackTree":
+        return new RedBlackTreeSet();
+      case "TopDownRedBlackTree":
+        return new TopDownRedBlackTreeSet();
+      case "TreeSet":
+        return new TreeSetAdapter();
+      default:
+        throw new IllegalArgumentException("Unknown implementation " + implementation);
+    }
+  }
+
+  final class TreeSetAdapter implements IntSet {
+    private final TreeSet<Integer> set = new TreeSet<>();
+
+    @Override
+    public void insert(int key) {
+      set.add(key);
+    }
+
+    @Override
+    public void delete(int key) {
+      set.remove(key);
+    }
+
+    @Override
+    public boolean contains(int key) {
+      return set.contains(key);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import java.util.Random;
+
+// The order in which a benchmark inserts the keys 0, 2, 4, ..., 2 * (size - 1). Only even keys are inserted, so odd
+// keys are guaranteed misses.
+public enum KeyOrder {
+
+  // Ascending: every insert lands on the rightmost path
+  SEQUENTIAL {
+    @Override
+    int[] keys(int size) {
+      int[] keys = new int[size];
+      for (int i = 0; i < size; i++) {
+        keys[i] = 2 * i;
+      }
+      return keys;
+    }
+  },
+
+  // Uniformly shuffled (with a fixed seed, so every run sees the same tree)
+  RANDOM {
+    @Override
+    int[] keys(int size) {
+      int[] keys = SEQUENTIAL.keys(size);
+      Random random = new Random(42);
+      for (int i = size - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int swap = keys[i];
+        keys[i] = keys[j];
+        keys[j] = swap;
+      }
+      return keys;
+    }
+  },
+
+  // Alternately the smallest and the largest remaining key, so both outer paths grow in turn and nearly every
+  // insert has to recolor or rotate
+  ADVERSARIAL {
+    @Override
+    int[] keys(int size) {
+      int[] keys = new int[size];
+      int low = 0;
+      int high = size - 1;
+      for (int i = 0; i < size; i++) {
+        keys[i] = 2 * ((i & 1) == 0 ? low++ : high--);
+      }
+      return keys;
+    }
+  };
+
+  abstract int[] keys(int size);
+}
@@ -0,0 +1,37 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Read/write mixes: each operation is a search with probability readPercent, otherwise an insert-then-delete of an
+// absent key, so the tree keeps its size
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MixedBenchmark extends TreeState {
+
+  @Param({"50", "90", "99"})
+  public int readPercent;
+
+  @Benchmark
+  public boolean mixed() {
+    int probe = nextProbe();
+    // The probe ring is random, so the probe itself can decide the operation without a second random number
+    if ((probe >>> 1) % 100 < readPercent) {
+      return set.contains(probe);
+    }
+    int key = probe | 1;
+    set.insert(key);
+    set.delete(key);
+    return true;
+  }
+}
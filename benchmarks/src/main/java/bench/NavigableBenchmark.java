@@ -0,0 +1,95 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Nearest-key queries through the NavigableSet interface, RedBlackTreeNavigableSet against TreeSet. Both box every
+// key, so this compares the trees behind the interface. The set holds the even keys below 2 * size, and the probes
+// are random, so half of them fall between two keys.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class NavigableBenchmark {
+
+  private static final int PROBES = 1 << 16;
+  private static final int PROBE_MASK = PROBES - 1;
+
+  // See RedBlackTreeSet for why the adapter is created through a method handle
+  private static final MethodHandle NEW_SET;
+
+  static {
+    try {
+      NEW_SET = MethodHandles.publicLookup()
+          .findConstructor(Class.forName("RedBlackTreeNavigableSet"), MethodType.methodType(void.class))
+          .asType(MethodType.methodType(NavigableSet.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Param({"RedBlackTree", "TreeSet"})
+  public String implementation;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private NavigableSet<Integer> set;
+  private int[] probes;
+  private int next;
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void build() throws Throwable {
+    set = implementation.equals("TreeSet") ? new TreeSet<>() : (NavigableSet<Integer>) NEW_SET.invokeExact();
+    for (int key : KeyOrder.RANDOM.keys(size)) {
+      set.add(key);
+    }
+    Random random = new Random(7);
+    probes = new int[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      probes[i] = random.nextInt(2 * size);
+    }
+  }
+
+  private int nextProbe() {
+    return probes[next++ & PROBE_MASK];
+  }
+
+  @Benchmark
+  public Integer floor() {
+    return set.floor(nextProbe());
+  }
+
+  @Benchmark
+  public Integer higher() {
+    return set.higher(nextProbe());
+  }
+
+  // Removes the smallest key and puts it back, so the set keeps its size
+  @Benchmark
+  public Integer pollFirstAdd() {
+    Integer first = set.pollFirst();
+    set.add(first);
+    return first;
+  }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// RedBlackTree lives in the default package, which code in a named package can't import, and JMH refuses benchmarks
+// in the default package. The calls therefore go through static final method handles, which the JIT treats as
+// constants and inlines just like direct calls.
+final class RedBlackTreeSet implements IntSet {
+
+  private static final MethodHandle NEW_TREE;
+  private static final MethodHandle INSERT;
+  private static final MethodHandle DELETE;
+  private static final MethodHandle SEARCH;
+
+  static {
+    try {
+      Class<?> treeClass = Class.forName("RedBlackTree");
+      Class<?> nodeClass = Class.forName("Node");
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      NEW_TREE = lookup.findConstructor(treeClass, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Object.class));
+      INSERT = lookup.findVirtual(treeClass, "insert", MethodType.methodType(void.class, int.class))
+          .asType(MethodType.methodType(void.class, Object.class, int.class));
+      DELETE = lookup.findVirtual(treeClass, "delete", MethodType.methodType(void.class, int.class))
+          .asType(MethodType.methodType(void.class, Object.class, int.class));
+      SEARCH = lookup.findVirtual(treeClass, "search", MethodType.methodType(nodeClass, int.class))
+          .asType(MethodType.methodType(Object.class, Object.class, int.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Object tree;
+
+  RedBlackTreeSet() {
+    try {
+      tree = (Object) NEW_TREE.invokeExact();
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void insert(int key) {
+    try {
+      INSERT.invokeExact(tree, key);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void delete(int key) {
+    try {
+      DELETE.invokeExact(tree, key);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean contains(int key) {
+    try {
+      return (Object) SEARCH.invokeExact(tree, key) != null;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
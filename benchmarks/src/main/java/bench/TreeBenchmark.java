@@ -0,0 +1,33 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Single operations against a tree that stays at its configured size
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TreeBenchmark extends TreeState {
+
+  // Half hits, half misses
+  @Benchmark
+  public boolean search() {
+    return set.contains(nextProbe());
+  }
+
+  // Inserts an absent (odd) key and deletes it again: one insert with its fixup, one delete of a red or black leaf
+  @Benchmark
+  public void insertDelete() {
+    int key = nextProbe() | 1;
+    set.insert(key);
+    set.delete(key);
+  }
+}
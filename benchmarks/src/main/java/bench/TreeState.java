@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// A set of the chosen implementation and size, built in the chosen key order, plus a ring of random probe keys.
+// Half of the probes are present (even) keys, half are absent (odd) ones.
+@State(Scope.Thread)
+public abstract class TreeState {
+
+  static final int PROBES = 1 << 16;
+  static final int PROBE_MASK = PROBES - 1;
+
+  @Param({"RedBlackTree", "TopDownRedBlackTree", "TreeSet"})
+  public String implementation;
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"SEQUENTIAL", "RANDOM", "ADVERSARIAL"})
+  public KeyOrder order;
+
+  IntSet set;
+  int[] probes;
+  int next;
+
+  @Setup(Level.Trial)
+  public void build() {
+    set = IntSet.create(implementation);
+    for (int key : order.keys(size)) {
+      set.insert(key);
+    }
+    Random random = new Random(7);
+    probes = new int[PROBES];
+    for (int i = 0; i < PROBES; i++) {
+      probes[i] = random.nextInt(2 * size);
+    }
+  }
+
+  int nextProbe() {
+    return probes[next++ & PROBE_MASK];
+  }
+}
@@ -0,0 +1,216 @@
+//Stress test for ConcurrentRedBlackTree: writer threads change the tree while reader threads check every answer
+//they get against what a sequential tree could have returned at some point in time, and at the end the tree must
+//hold exactly what the writers' own sequential reference says.
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentRedBlackTreeTest {
+
+  // Key layout: STABLE keys below 0 are inserted up front and never touched; pair m is the keys 2m and 2m+1, which
+  // are only ever inserted and deleted together by one insertAll/deleteAll; SOLO keys above the pairs are changed one
+  // at a time by insert/delete; keys from ABSENT on are never inserted.
+  private static final int STABLE = 256;
+  private static final int PAIRS = 1024;
+  private static final int SOLO = 1024;
+  private static final int FIRST_SOLO = 2 * PAIRS;
+  private static final int ABSENT = FIRST_SOLO + SOLO;
+
+  private static final int WRITERS = 2;
+  private static final int READERS = 4;
+  private static final int OPERATIONS_PER_WRITER = 40_000;
+
+  @Test
+  public void readersSeeConsistentSetWhileWritersChangeIt() throws InterruptedException {
+    stress(new RedBlackTree(), false);
+  }
+
+  @Test
+  public void readersSeeConsistentMultisetWhileWritersChangeIt() throws InterruptedException {
+    stress(RedBlackTree.multiset(), true);
+  }
+
+  private static void stress(RedBlackTree tree, boolean multiset) throws InterruptedException {
+    ConcurrentRedBlackTree concurrent = new ConcurrentRedBlackTree(tree);
+    for (int key = -STABLE; key < 0; key++) {
+      concurrent.insert(key);
+    }
+
+    // Occurrences of every pair and solo key; writer w only touches the keys with index % WRITERS == w, so each
+    // entry is written by one thread and read after join()
+    int[] pairCounts = new int[PAIRS];
+    int[] soloCounts = new int[SOLO];
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicBoolean writing = new AtomicBoolean(true);
+    CountDownLatch start = new CountDownLatch(1);
+
+    Thread[] writers = new Thread[WRITERS];
+    for (int w = 0; w < WRITERS; w++) {
+      int writer = w;
+      writers[w] = new Thread(() -> {
+        Random random = new Random(31 * writer + (multiset ? 1 : 0));
+        await(start);
+        for (int i = 0; i < OPERATIONS_PER_WRITER && failure.get() == null; i++) {
+          if (random.nextBoolean()) {
+            int m = random.nextInt(PAIRS / WRITERS) * WRITERS + writer;
+            int[] pair = {2 * m, 2 * m + 1};
+            if (random.nextInt(3) > 0) {
+              concurrent.insertAll(pair);
+              pairCounts[m] = multiset ? pairCounts[m] + 1 : 1;
+            } else {
+              concurrent.deleteAll(pair);
+              pairCounts[m] = Math.max(0, pairCounts[m] - 1);
+            }
+          } else {
+            int s = random.nextInt(SOLO / WRITERS) * WRITERS + writer;
+            if (random.nextInt(3) > 0 && (multiset || soloCounts[s] == 0)) {
+              concurrent.insert(FIRST_SOLO + s);
+              soloCounts[s]++;
+            } else {
+              concurrent.delete(FIRST_SOLO + s);
+              soloCounts[s] = Math.max(0, soloCounts[s] - 1);
+            }
+          }
+        }
+      });
+    }
+
+    Thread[] readers = new Thread[READERS];
+    for (int r = 0; r < READERS; r++) {
+      int reader = r;
+      readers[r] = new Thread(() -> {
+        Random random = new Random(1000 + reader);
+        await(start);
+        try {
+          while (writing.get() && failure.get() == null) {
+            checkReads(concurrent, random, multiset);
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      });
+    }
+
+    for (Thread thread : writers) {
+      thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+      thread.start();
+    }
+    for (Thread thread : readers) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : writers) {
+      thread.join();
+    }
+    writing.set(false);
+    for (Thread thread : readers) {
+      thread.join();
+    }
+    if (failure.get() != null) {
+      throw new AssertionError("A thread failed", failure.get());
+    }
+
+    // The sequential reference: everything the writers did, replayed in key order
+    int expectedSize = STABLE;
+    for (int count : pairCounts) {
+      expectedSize += 2 * count;
+    }
+    for (int count : soloCounts) {
+      expectedSize += count;
+    }
+    int[] expected = new int[expectedSize];
+    int n = 0;
+    for (int key = -STABLE; key < 0; key++) {
+      expected[n++] = key;
+    }
+    for (int m = 0; m < PAIRS; m++) {
+      for (int key = 2 * m; key <= 2 * m + 1; key++) {
+        for (int i = 0; i < pairCounts[m]; i++) {
+          expected[n++] = key;
+        }
+      }
+    }
+    for (int s = 0; s < SOLO; s++) {
+      for (int i = 0; i < soloCounts[s]; i++) {
+        expected[n++] = FIRST_SOLO + s;
+      }
+    }
+
+    assertEquals(expectedSize, concurrent.size());
+    assertEquals(expectedSize, concurrent.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    assertTrue(Arrays.equals(expected, collect(concurrent, Integer.MIN_VALUE, Integer.MAX_VALUE)),
+        "tree differs from the sequential reference");
+    for (int s = 0; s < SOLO; s++) {
+      assertEquals(soloCounts[s] > 0, concurrent.search(FIRST_SOLO + s));
+    }
+    assertTrue(tree.isRedBlack());
+  }
+
+  // One round of reads, each checked against what the tree may hold at any single point in time
+  private static void checkReads(ConcurrentRedBlackTree concurrent, Random random, boolean multiset) {
+    int stable = -1 - random.nextInt(STABLE);
+    assertTrue(concurrent.search(stable), "stable key " + stable + " not found");
+    int absent = ABSENT + random.nextInt(1000);
+    assertTrue(!concurrent.search(absent), "absent key " + absent + " found");
+    concurrent.search(FIRST_SOLO + random.nextInt(SOLO));
+    assertTrue(concurrent.size() >= STABLE, "size below the number of stable keys");
+
+    int m = random.nextInt(PAIRS);
+    int inPair = concurrent.countInRange(2 * m, 2 * m + 1);
+    assertTrue(inPair % 2 == 0, "pair " + m + " counted " + inPair + " keys");
+
+    // A window of pairs, and once in a while everything up to the solo keys
+    int lo = -STABLE;
+    int hi = FIRST_SOLO - 1;
+    if (random.nextInt(8) > 0) {
+      lo = 2 * random.nextInt(PAIRS);
+      hi = Math.min(lo + 2 * (1 + random.nextInt(32)), FIRST_SOLO) - 1;
+    }
+    int[] keys = collect(concurrent, lo, hi);
+    int i = 0;
+    for (int key = lo; key < 0; key++, i++) {
+      assertTrue(i < keys.length && keys[i] == key, "stable key " + key + " missing from a range");
+    }
+    while (i < keys.length) {
+      int key = keys[i];
+      assertTrue(key % 2 == 0 && key >= lo && key <= hi, "range [" + lo + ", " + hi + "] torn at " + key);
+      int occurrences = 0;
+      while (i < keys.length && keys[i] == key) {
+        occurrences++;
+        i++;
+      }
+      assertTrue(multiset || occurrences == 1, "key " + key + " reported " + occurrences + " times");
+      for (int j = 0; j < occurrences; j++, i++) {
+        assertTrue(i < keys.length && keys[i] == key + 1, "pair of " + key + " torn in a range");
+      }
+    }
+  }
+
+  private static int[] collect(ConcurrentRedBlackTree concurrent, int lo, int hi) {
+    int[][] keys = {new int[16]};
+    int[] count = {0};
+    concurrent.forEachInRange(lo, hi, key -> {
+      if (count[0] == keys[0].length) {
+        keys[0] = Arrays.copyOf(keys[0], 2 * count[0]);
+      }
+      keys[0][count[0]++] = key;
+    });
+    return Arrays.copyOf(keys[0], count[0]);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+//Crash tests for DurableRedBlackTree. crash() stops the tree the way a dying process would, dropping the batch that
+//wasn't synced yet; reopening the directory must then bring back exactly the keys that were durable.
+//loseLog() closes the log under the tree, so its next write fails the way one to a dead disk would.
+//A crash in the middle of compact() can't be injected, so those tests build the files each such crash leaves behind.
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DurableRedBlackTreeTest {
+
+  // Long enough that no background sync happens during a test, so only sync() and full batches reach the disk
+  private static final long NEVER_MILLIS = 3_600_000;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void crashMidBatchKeepsOnlySyncedBatches() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, NEVER_MILLIS, 1 << 20);
+    for (int key = 0; key < 100; key++) {
+      tree.insert(key);
+    }
+    tree.delete(7);
+    tree.sync();
+    for (int key = 100; key < 150; key++) {
+      tree.insert(key);
+    }
+    tree.delete(8);
+    tree.crash();
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 100, 7), keys(reopened));
+    }
+  }
+
+  @Test
+  public void crashMidBatchKeepsBatchesThatFilledUp() throws IOException {
+    // Each batch holds 10 records of 5 bytes and is synced as soon as it is full
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, NEVER_MILLIS, 50);
+    for (int key = 0; key < 25; key++) {
+      tree.insert(key);
+    }
+    tree.crash();
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 20), keys(reopened));
+    }
+  }
+
+  @Test
+  public void failedSyncFailsEveryLaterCallAndClose() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, NEVER_MILLIS, 1 << 20);
+    for (int key = 0; key < 100; key++) {
+      tree.insert(key);
+    }
+    tree.sync();
+    for (int key = 100; key < 150; key++) {
+      tree.insert(key);
+    }
+    tree.loseLog();
+
+    assertThrows(IOException.class, tree::sync);
+    // The failed batch is gone, so nothing may be appended after it, not even once the first error was seen
+    assertThrows(IOException.class, tree::sync);
+    assertThrows(IOException.class, () -> tree.insert(150));
+    assertThrows(IOException.class, () -> tree.delete(0));
+    assertThrows(IOException.class, tree::compact);
+    assertThrows(IOException.class, tree::close);
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 100), keys(reopened));
+    }
+  }
+
+  @Test
+  public void mutationWhoseLogWriteFailsLeavesTreeUnchanged() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, 0, 1);
+    for (int key = 0; key < 10; key++) {
+      tree.insert(key);
+    }
+    tree.loseLog();
+
+    assertThrows(IOException.class, () -> tree.insert(10));
+    assertFalse(tree.search(10));
+    assertThrows(IOException.class, () -> tree.delete(0));
+    assertTrue(tree.search(0));
+    assertArrayEquals(range(0, 10), keys(tree));
+    assertThrows(IOException.class, tree::close);
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 10), keys(reopened));
+    }
+  }
+
+  @Test
+  public void tornFrameIsCutOffOnReopen() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, 0, 1);
+    for (int key = 0; key < 10; key++) {
+      tree.insert(key);
+    }
+    tree.crash();
+    // Half of a frame that claims 5 records, as if the crash hit while it was being written
+    try (FileChannel log = FileChannel.open(directory.resolve(DurableRedBlackTree.LOG_FILE),
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      log.write(ByteBuffer.allocate(13).putInt(25).putInt(0x12345678).put((byte) 1).putInt(99).flip());
+    }
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 10), keys(reopened));
+      reopened.insert(10);
+    }
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 11), keys(reopened));
+    }
+  }
+
+  @Test
+  public void crashMidCompactBeforeSnapshotIsMoved() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, 0, 1);
+    for (int key = 0; key < 50; key++) {
+      tree.insert(key);
+    }
+    tree.compact();
+    for (int key = 50; key < 80; key++) {
+      tree.insert(key);
+    }
+    tree.delete(3);
+    tree.crash();
+    // The next compact got as far as part of its temporary file
+    Files.write(directory.resolve(DurableRedBlackTree.SNAPSHOT_FILE + ".tmp"), new byte[] {0x52, 0x42, 0x54});
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 80, 3), keys(reopened));
+    }
+  }
+
+  @Test
+  public void crashMidCompactBeforeLogIsTruncated() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, 0, 1);
+    for (int key = 0; key < 50; key++) {
+      tree.insert(key);
+    }
+    tree.delete(10);
+    tree.delete(11);
+    tree.insert(10);
+    Path log = directory.resolve(DurableRedBlackTree.LOG_FILE);
+    Path logBeforeCompact = directory.resolve("log-before-compact");
+    Files.copy(log, logBeforeCompact);
+    tree.compact();
+    tree.crash();
+    // The new snapshot is in place but the log still holds everything that is already in it
+    Files.move(logBeforeCompact, log, StandardCopyOption.REPLACE_EXISTING);
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(0, 50, 11), keys(reopened));
+    }
+  }
+
+  @Test
+  public void crashAfterCompactReplaysOnlyTheNewLog() throws IOException {
+    DurableRedBlackTree tree = DurableRedBlackTree.open(directory, NEVER_MILLIS, 1 << 20);
+    for (int key = 0; key < 40; key++) {
+      tree.insert(key);
+    }
+    tree.compact();
+    tree.delete(0);
+    tree.insert(40);
+    tree.sync();
+    tree.insert(41);
+    tree.crash();
+
+    try (DurableRedBlackTree reopened = DurableRedBlackTree.open(directory, 0, 1)) {
+      assertArrayEquals(range(1, 41), keys(reopened));
+      assertEquals(40, reopened.size());
+    }
+  }
+
+  // Keys from (inclusive) to to (exclusive), without the skipped ones
+  private static int[] range(int from, int to, int... skipped) {
+    return IntStream.range(from, to).filter(key -> Arrays.stream(skipped).noneMatch(s -> s == key)).toArray();
+  }
+
+  private static int[] keys(DurableRedBlackTree tree) {
+    IntStream.Builder keys = IntStream.builder();
+    tree.forEach(keys::add);
+    return keys.build().toArray();
+  }
+}
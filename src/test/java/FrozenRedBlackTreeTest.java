@@ -0,0 +1,136 @@
+//Differential tests for FrozenRedBlackTree: contains, floor and ceiling are checked against TreeSet for every size
+//up to a few levels (complete and incomplete bottom levels alike) and for larger random trees, and refreeze is
+//checked against applying the same batch to a TreeSet.
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class FrozenRedBlackTreeTest {
+
+  @Test
+  public void lookupsMatchTreeSetForEverySmallSize() {
+    Random random = new Random(31);
+    for (int size = 0; size <= 70; size++) {
+      TreeSet<Integer> keys = randomSet(random, size, 4 * size + 1);
+      assertSame(keys, treeOf(keys).freeze(), random);
+    }
+  }
+
+  @Test
+  public void lookupsMatchTreeSetForLargeAndExtremeKeys() {
+    Random random = new Random(32);
+    for (int size : new int[] {1000, 65_535, 65_536, 100_000}) {
+      TreeSet<Integer> keys = new TreeSet<>();
+      while (keys.size() < size) {
+        keys.add(random.nextInt());
+      }
+      keys.add(Integer.MIN_VALUE);
+      keys.add(Integer.MAX_VALUE);
+      assertSame(keys, treeOf(keys).freeze(), random);
+    }
+  }
+
+  @Test
+  public void refreezeMatchesTreeSet() {
+    Random random = new Random(33);
+    TreeSet<Integer> keys = randomSet(random, 2000, 10_000);
+    FrozenRedBlackTree frozen = treeOf(keys).freeze();
+    for (int round = 0; round < 50; round++) {
+      int[] inserted = random.ints(random.nextInt(300), 0, 10_000).toArray();
+      int[] deleted = random.ints(random.nextInt(300), 0, 10_000).toArray();
+      int[] before = frozen.toArray();
+      FrozenRedBlackTree next = frozen.refreeze(inserted, deleted);
+      for (int key : inserted) {
+        keys.add(key);
+      }
+      for (int key : deleted) {
+        keys.remove(key);
+      }
+      assertSame(keys, next, random);
+      // The old index stays as it was
+      assertArrayEquals(before, frozen.toArray());
+      frozen = next;
+    }
+  }
+
+  @Test
+  public void freezeIsIndependentOfTheTree() {
+    TreeSet<Integer> keys = randomSet(new Random(34), 500, 2000);
+    RedBlackTree tree = treeOf(keys);
+    FrozenRedBlackTree frozen = tree.freeze();
+    tree.insert(-1);
+    tree.delete(keys.first());
+    assertSame(keys, frozen, new Random(35));
+
+    RedBlackTree thawed = frozen.thaw();
+    assertTrue(thawed.isRedBlack());
+    IntStream.Builder thawedKeys = IntStream.builder();
+    thawed.forEach(thawedKeys::add);
+    assertArrayEquals(frozen.toArray(), thawedKeys.build().toArray());
+  }
+
+  @Test
+  public void multisetFreezesAsItsDistinctKeys() {
+    RedBlackTree tree = RedBlackTree.multiset();
+    TreeSet<Integer> keys = new TreeSet<>();
+    Random random = new Random(36);
+    for (int i = 0; i < 3000; i++) {
+      int key = random.nextInt(400);
+      tree.insert(key);
+      keys.add(key);
+    }
+    assertSame(keys, tree.freeze(), random);
+  }
+
+  private static TreeSet<Integer> randomSet(Random random, int size, int range) {
+    TreeSet<Integer> keys = new TreeSet<>();
+    while (keys.size() < size) {
+      keys.add(random.nextInt(range));
+    }
+    return keys;
+  }
+
+  private static RedBlackTree treeOf(TreeSet<Integer> keys) {
+    RedBlackTree tree = new RedBlackTree();
+    keys.forEach(tree::insert);
+    return tree;
+  }
+
+  // Probes every key, its neighbours and random keys in and around the key range
+  private static void assertSame(TreeSet<Integer> expected, FrozenRedBlackTree frozen, Random random) {
+    assertEquals(expected.size(), frozen.size());
+    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), frozen.toArray());
+    for (int key : expected) {
+      assertLookups(expected, frozen, key);
+      if (key != Integer.MIN_VALUE) {
+        assertLookups(expected, frozen, key - 1);
+      }
+      if (key != Integer.MAX_VALUE) {
+        assertLookups(expected, frozen, key + 1);
+      }
+    }
+    int lo = expected.isEmpty() ? 0 : expected.first();
+    int hi = expected.isEmpty() ? 0 : expected.last();
+    for (int i = 0; i < 200; i++) {
+      assertLookups(expected, frozen, (int) (lo - 10 + (long) random.nextInt(Math.max(1, hi - lo + 20))));
+      assertLookups(expected, frozen, random.nextInt());
+    }
+    assertLookups(expected, frozen, Integer.MIN_VALUE);
+    assertLookups(expected, frozen, Integer.MAX_VALUE);
+  }
+
+  private static void assertLookups(TreeSet<Integer> expected, FrozenRedBlackTree frozen, int key) {
+    assertEquals(expected.contains(key), frozen.contains(key));
+    Integer floor = expected.floor(key);
+    assertEquals(floor == null ? FrozenRedBlackTree.NOT_FOUND : floor, frozen.floor(key));
+    Integer ceiling = expected.ceiling(key);
+    assertEquals(ceiling == null ? FrozenRedBlackTree.NOT_FOUND : ceiling, frozen.ceiling(key));
+  }
+}
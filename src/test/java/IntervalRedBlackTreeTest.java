@@ -0,0 +1,131 @@
+//Differential tests for IntervalRedBlackTree: random inserts and deletes of short, long and nested intervals are
+//mirrored in a sorted set, and every overlap and stabbing query is checked against a brute-force scan of it.
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class IntervalRedBlackTreeTest {
+
+  private static final int OPERATIONS = 20_000;
+  // Negative ends included, to catch comparisons that assume otherwise
+  private static final int MIN_POINT = -1000;
+  private static final int MAX_POINT = 1000;
+
+  // Tree order: by low, then by high
+  private static final Comparator<int[]> ORDER =
+      Comparator.<int[]>comparingInt(interval -> interval[0]).thenComparingInt(interval -> interval[1]);
+
+  @Test
+  public void queriesMatchBruteForceUnderInsertsAndDeletes() {
+    Random random = new Random(41);
+    IntervalRedBlackTree tree = new IntervalRedBlackTree();
+    TreeSet<int[]> intervals = new TreeSet<>(ORDER);
+    for (int step = 0; step < OPERATIONS; step++) {
+      // Grow the set for the first half, then shrink it back, so both inserts and deletes see every size
+      boolean growing = step < OPERATIONS / 2;
+      if (random.nextInt(10) < (growing ? 7 : 3)) {
+        int[] interval = randomInterval(random);
+        if (intervals.add(interval)) {
+          tree.insert(interval[0], interval[1]);
+        } else {
+          assertThrows(IllegalArgumentException.class, () -> tree.insert(interval[0], interval[1]));
+        }
+      } else {
+        // Mostly intervals that are there, sometimes ones that aren't
+        int[] interval = intervals.isEmpty() || random.nextInt(4) == 0
+            ? randomInterval(random)
+            : intervals.ceiling(randomInterval(random));
+        if (interval == null) {
+          interval = intervals.isEmpty() ? randomInterval(random) : intervals.first();
+        }
+        intervals.remove(interval);
+        tree.delete(interval[0], interval[1]);
+      }
+      assertEquals(intervals.size(), tree.size());
+
+      int[] query = randomInterval(random);
+      assertEquals(!overlapping(intervals, query[0], query[1]).isEmpty(), tree.overlapsAny(query[0], query[1]));
+      if (step % 100 == 0) {
+        assertSame(intervals, tree, random);
+      }
+    }
+    assertSame(intervals, tree, random);
+  }
+
+  @Test
+  public void intervalsAtTheEndsOfTheIntRange() {
+    IntervalRedBlackTree tree = new IntervalRedBlackTree();
+    tree.insert(Integer.MIN_VALUE, Integer.MIN_VALUE);
+    tree.insert(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    tree.insert(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    assertTrue(tree.anyContains(0));
+    assertEquals(3, collect(action -> tree.forEachOverlapping(Integer.MIN_VALUE, Integer.MAX_VALUE, action))
+        .length / 2);
+    assertArrayEquals(new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE},
+        collect(action -> tree.forEachContaining(Integer.MAX_VALUE, action)));
+    tree.delete(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    assertFalse(tree.anyContains(0));
+    assertTrue(tree.isRedBlack());
+  }
+
+  // Mostly short intervals, some long ones that nest many others, and single points
+  private static int[] randomInterval(Random random) {
+    int low = MIN_POINT + random.nextInt(MAX_POINT - MIN_POINT + 1);
+    int length = switch (random.nextInt(10)) {
+      case 0 -> 0;
+      case 1 -> random.nextInt(MAX_POINT - MIN_POINT + 1);
+      default -> random.nextInt(20);
+    };
+    return new int[] {low, (int) Math.min(MAX_POINT, (long) low + length)};
+  }
+
+  private static void assertSame(TreeSet<int[]> intervals, IntervalRedBlackTree tree, Random random) {
+    assertTrue(tree.isRedBlack());
+    assertArrayEquals(flatten(intervals), collect(tree::forEach));
+    for (int[] interval : intervals) {
+      assertTrue(tree.contains(interval[0], interval[1]));
+    }
+    for (int i = 0; i < 20; i++) {
+      int[] query = randomInterval(random);
+      assertArrayEquals(flatten(overlapping(intervals, query[0], query[1])),
+          collect(action -> tree.forEachOverlapping(query[0], query[1], action)));
+      int point = MIN_POINT - 10 + random.nextInt(MAX_POINT - MIN_POINT + 21);
+      TreeSet<int[]> containing = overlapping(intervals, point, point);
+      assertEquals(!containing.isEmpty(), tree.anyContains(point));
+      assertArrayEquals(flatten(containing), collect(action -> tree.forEachContaining(point, action)));
+    }
+  }
+
+  // Brute force: every interval [l, h] with l <= high and h >= low, in tree order
+  private static TreeSet<int[]> overlapping(TreeSet<int[]> intervals, int low, int high) {
+    TreeSet<int[]> result = new TreeSet<>(ORDER);
+    for (int[] interval : intervals) {
+      if (interval[0] <= high && interval[1] >= low) {
+        result.add(interval);
+      }
+    }
+    return result;
+  }
+
+  private static int[] flatten(TreeSet<int[]> intervals) {
+    return intervals.stream().flatMapToInt(IntStream::of).toArray();
+  }
+
+  // The intervals a query reports, as low, high, low, high, ...
+  private static int[] collect(Consumer<IntervalRedBlackTree.IntervalConsumer> query) {
+    IntStream.Builder reported = IntStream.builder();
+    query.accept((low, high) -> reported.add(low).add(high));
+    return reported.build().toArray();
+  }
+}
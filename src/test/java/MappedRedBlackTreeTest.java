@@ -0,0 +1,71 @@
+//Tests for MappedRedBlackTree's header check: a header whose root or free list points past the stored slots must be
+//rejected when the tree is opened, not when a later search first follows the link.
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedRedBlackTreeTest {
+
+  // Header offsets of the root and the head of the free list
+  private static final int HEADER_ROOT = 20;
+  private static final int HEADER_FREE_HEAD = 32;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void reopenedTreeHoldsTheSameKeys() throws IOException {
+    writeTree();
+    try (MappedRedBlackTree tree = MappedRedBlackTree.open(directory)) {
+      assertEquals(99, tree.size());
+      assertTrue(tree.search(50));
+      assertFalse(tree.search(0));
+      assertTrue(tree.isRedBlack());
+    }
+  }
+
+  @Test
+  public void rootPastTheSlotsIsCorrupt() throws IOException {
+    writeTree();
+    overwriteHeader(HEADER_ROOT, 100);
+    assertThrows(IOException.class, () -> MappedRedBlackTree.open(directory));
+    overwriteHeader(HEADER_ROOT, -2);
+    assertThrows(IOException.class, () -> MappedRedBlackTree.open(directory));
+  }
+
+  @Test
+  public void freeHeadPastTheSlotsIsCorrupt() throws IOException {
+    writeTree();
+    overwriteHeader(HEADER_FREE_HEAD, Integer.MAX_VALUE);
+    assertThrows(IOException.class, () -> MappedRedBlackTree.open(directory));
+  }
+
+  // 100 slots, the one of key 0 on the free list
+  private void writeTree() throws IOException {
+    try (MappedRedBlackTree tree = MappedRedBlackTree.open(directory)) {
+      for (int key = 0; key < 100; key++) {
+        tree.insert(key);
+      }
+      tree.delete(0);
+    }
+  }
+
+  private void overwriteHeader(int offset, int value) throws IOException {
+    try (FileChannel header = FileChannel.open(directory.resolve(MappedRedBlackTree.HEADER_FILE),
+        StandardOpenOption.WRITE)) {
+      header.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).flip(), offset);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+//Differential tests for RedBlackTree's multiset mode: random inserts, upserts and deletes are checked against a
+//TreeMap of counts, with and without node recycling, so that counts, sizes, order statistics and iteration all
+//have to agree after every step.
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class RedBlackTreeMultisetTest {
+
+  private static final int OPERATIONS = 20_000;
+  // Small enough that most keys occur several times
+  private static final int KEY_RANGE = 500;
+
+  @Test
+  public void randomOperationsMatchTreeMapOfCounts() {
+    run(new Random(21), RedBlackTree.multiset());
+  }
+
+  @Test
+  public void randomOperationsMatchTreeMapOfCountsWithRecycling() {
+    RedBlackTree tree = RedBlackTree.multiset();
+    tree.setRecycledNodeLimit(64);
+    run(new Random(22), tree);
+  }
+
+  @Test
+  public void duplicatesChangeCountsButNotShape() {
+    RedBlackTree tree = RedBlackTree.multiset();
+    for (int key = 0; key < 100; key++) {
+      tree.insert(key);
+    }
+    int height = tree.height();
+    for (int i = 0; i < 1000; i++) {
+      tree.insert(42);
+    }
+    assertEquals(1001, tree.count(42));
+    assertEquals(1100, tree.size());
+    assertEquals(height, tree.height());
+    assertEquals(42 + 1001, tree.rank(43));
+    assertEquals(1001, tree.deleteAllOccurrences(42));
+    assertEquals(99, tree.size());
+    assertTrue(tree.isRedBlack());
+  }
+
+  private static void run(Random random, RedBlackTree tree) {
+    TreeMap<Integer, Integer> counts = new TreeMap<>();
+    for (int step = 0; step < OPERATIONS; step++) {
+      int key = random.nextInt(KEY_RANGE);
+      int present = counts.getOrDefault(key, 0);
+      switch (random.nextInt(6)) {
+        case 0, 1 -> {
+          tree.insert(key);
+          counts.merge(key, 1, Integer::sum);
+        }
+        case 2 -> {
+          assertEquals(present == 0, tree.insertIfAbsent(key));
+          counts.putIfAbsent(key, 1);
+        }
+        case 3 -> {
+          Node node = tree.upsert(key);
+          assertEquals(key, node.key);
+          assertEquals(Math.max(present, 1), node.count);
+          counts.putIfAbsent(key, 1);
+        }
+        case 4 -> {
+          tree.delete(key);
+          if (present > 1) {
+            counts.put(key, present - 1);
+          } else {
+            counts.remove(key);
+          }
+        }
+        default -> {
+          assertEquals(present, tree.deleteAllOccurrences(key));
+          counts.remove(key);
+        }
+      }
+      assertEquals((int) counts.getOrDefault(key, 0), tree.count(key));
+      if (step % 500 == 0) {
+        assertSame(counts, tree, random);
+      }
+    }
+    assertSame(counts, tree, random);
+  }
+
+  private static void assertSame(TreeMap<Integer, Integer> counts, RedBlackTree tree, Random random) {
+    int[] expected = counts.entrySet().stream()
+        .flatMapToInt(entry -> IntStream.range(0, entry.getValue()).map(i -> entry.getKey()))
+        .toArray();
+    IntStream.Builder actual = IntStream.builder();
+    tree.forEach(actual::add);
+    assertArrayEquals(expected, actual.build().toArray());
+    assertEquals(expected.length, tree.size());
+    assertTrue(tree.isRedBlack());
+
+    for (int i = 0; i < 20; i++) {
+      int key = random.nextInt(KEY_RANGE);
+      int smaller = counts.headMap(key).values().stream().mapToInt(Integer::intValue).sum();
+      assertEquals(smaller, tree.rank(key));
+      int hi = key + random.nextInt(KEY_RANGE / 4);
+      int inRange = counts.subMap(key, true, hi, true).values().stream().mapToInt(Integer::intValue).sum();
+      assertEquals(inRange, tree.countInRange(key, hi));
+      if (expected.length > 0) {
+        int k = random.nextInt(expected.length);
+        assertEquals(expected[k], tree.select(k));
+      }
+    }
+    for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+      assertEquals((int) entry.getValue(), tree.count(entry.getKey()));
+    }
+  }
+}
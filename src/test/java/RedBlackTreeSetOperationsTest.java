@@ -0,0 +1,135 @@
+//Differential tests for RedBlackTree's join-based operations: join, split, union, intersection and difference are
+//checked against TreeSet on random trees, small ones and ones large enough for the set operations to fork.
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class RedBlackTreeSetOperationsTest {
+
+  // Sizes below and well above RedBlackTree.PARALLEL_CUTOFF
+  private static final int[] SIZES = {0, 1, 7, 100, 5_000, 60_000};
+
+  @Test
+  public void setOperationsMatchTreeSet() {
+    Random random = new Random(11);
+    for (int sizeA : SIZES) {
+      for (int sizeB : SIZES) {
+        // Key ranges that overlap fully, partly or hardly at all
+        int range = 1 + Math.max(sizeA, sizeB) * (1 + random.nextInt(4));
+        TreeSet<Integer> a = randomSet(random, sizeA, range);
+        TreeSet<Integer> b = randomSet(random, sizeB, range);
+
+        TreeSet<Integer> expected = new TreeSet<>(a);
+        expected.addAll(b);
+        RedBlackTree union = treeOf(a);
+        RedBlackTree other = treeOf(b);
+        union.union(other);
+        assertSame(expected, union);
+        assertEquals(0, other.size());
+
+        expected = new TreeSet<>(a);
+        expected.retainAll(b);
+        RedBlackTree intersection = treeOf(a);
+        intersection.intersection(treeOf(b));
+        assertSame(expected, intersection);
+
+        expected = new TreeSet<>(a);
+        expected.removeAll(b);
+        RedBlackTree difference = treeOf(a);
+        difference.difference(treeOf(b));
+        assertSame(expected, difference);
+      }
+    }
+  }
+
+  @Test
+  public void operationsWithItselfAreWellDefined() {
+    TreeSet<Integer> keys = randomSet(new Random(12), 1000, 5000);
+    RedBlackTree tree = treeOf(keys);
+    tree.union(tree);
+    assertSame(keys, tree);
+    tree.intersection(tree);
+    assertSame(keys, tree);
+    tree.difference(tree);
+    assertSame(new TreeSet<>(), tree);
+  }
+
+  @Test
+  public void splitAndJoinMatchTreeSet() {
+    Random random = new Random(13);
+    for (int size : SIZES) {
+      TreeSet<Integer> keys = randomSet(random, size, 3 * size + 1);
+      for (int round = 0; round < 20; round++) {
+        int key = random.nextInt(3 * size + 3) - 1;
+        RedBlackTree less = treeOf(keys);
+        RedBlackTree greater = less.split(key);
+        assertSame(new TreeSet<>(keys.headSet(key, false)), less);
+        assertSame(new TreeSet<>(keys.tailSet(key, true)), greater);
+
+        // Join the halves back around a key between them
+        if (!keys.contains(key)) {
+          RedBlackTree joined = RedBlackTree.join(less, key, greater);
+          TreeSet<Integer> expected = new TreeSet<>(keys);
+          expected.add(key);
+          assertSame(expected, joined);
+          assertEquals(0, less.size());
+          assertEquals(0, greater.size());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void multisetUnionAndIntersectionKeepThisTreesCounts() {
+    RedBlackTree a = RedBlackTree.multiset();
+    RedBlackTree b = RedBlackTree.multiset();
+    a.insertAll(new int[] {1, 1, 2, 3, 3, 3});
+    b.insertAll(new int[] {1, 3, 4, 4});
+    a.union(b);
+    assertEquals(2, a.count(1));
+    assertEquals(1, a.count(2));
+    assertEquals(3, a.count(3));
+    assertEquals(2, a.count(4));
+    assertEquals(8, a.size());
+    assertTrue(a.isRedBlack());
+
+    RedBlackTree c = RedBlackTree.multiset();
+    c.insertAll(new int[] {1, 1, 4, 5});
+    a.intersection(c);
+    assertEquals(2, a.count(1));
+    assertEquals(2, a.count(4));
+    assertEquals(0, a.count(3));
+    assertEquals(4, a.size());
+  }
+
+  private static TreeSet<Integer> randomSet(Random random, int size, int range) {
+    TreeSet<Integer> set = new TreeSet<>();
+    while (set.size() < size) {
+      set.add(random.nextInt(range));
+    }
+    return set;
+  }
+
+  private static RedBlackTree treeOf(TreeSet<Integer> keys) {
+    RedBlackTree tree = new RedBlackTree();
+    for (int key : keys) {
+      tree.insert(key);
+    }
+    return tree;
+  }
+
+  private static void assertSame(TreeSet<Integer> expected, RedBlackTree tree) {
+    IntStream.Builder keys = IntStream.builder();
+    tree.forEach(keys::add);
+    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), keys.build().toArray());
+    assertEquals(expected.size(), tree.size());
+    assertTrue(tree.isRedBlack(), "result is not a valid red-black tree");
+  }
+}
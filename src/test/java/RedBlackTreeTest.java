@@ -0,0 +1,106 @@
+//Checks that RedBlackTree's delete path allocates nothing: a deleted black leaf is stood in for by the tree's shared
+//terminator instead of a new NilNode, and with recycling on a freed node is handed out again by the next insert.
+//Allocation is measured with the per-thread counter of HotSpot's ThreadMXBean.
+//Also checks that the black height kept by stats caching matches a full TreeStats walk after every kind of change.
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class RedBlackTreeTest {
+
+  private static final int KEYS = 100_000;
+  // Room for whatever the measurement itself allocates; one NilNode per black-leaf delete would be megabytes
+  private static final long SLACK_BYTES = 4096;
+
+  @Test
+  public void deleteAllocatesNothing() {
+    int[] keys = shuffledKeys(KEYS, 1);
+    RedBlackTree tree = new RedBlackTree();
+    for (int key : keys) {
+      tree.insert(key);
+    }
+
+    long before = allocatedBytes();
+    for (int key : keys) {
+      tree.delete(key);
+    }
+    long allocated = allocatedBytes() - before;
+
+    assertEquals(0, tree.size());
+    assertTrue(allocated < SLACK_BYTES, "deleting " + KEYS + " keys allocated " + allocated + " bytes");
+  }
+
+  @Test
+  public void insertDeleteChurnAllocatesNothingWithRecycling() {
+    int[] keys = shuffledKeys(KEYS, 2);
+    RedBlackTree tree = new RedBlackTree();
+    tree.setRecycledNodeLimit(KEYS);
+    for (int key : keys) {
+      tree.insert(key);
+    }
+
+    long before = allocatedBytes();
+    for (int key : keys) {
+      tree.delete(key);
+      tree.insert(key + KEYS);
+    }
+    long allocated = allocatedBytes() - before;
+
+    assertEquals(KEYS, tree.size());
+    assertTrue(tree.isRedBlack());
+    assertTrue(allocated < SLACK_BYTES, "churning " + KEYS + " keys allocated " + allocated + " bytes");
+  }
+
+  @Test
+  public void cachedBlackHeightFollowsEveryChange() {
+    Random random = new Random(3);
+    RedBlackTree tree = new RedBlackTree();
+    tree.setStatsCaching(true);
+    for (int round = 0; round < 20_000; round++) {
+      int key = random.nextInt(4096);
+      switch (random.nextInt(8)) {
+        case 0, 1, 2 -> tree.insertIfAbsent(key);
+        case 3, 4 -> tree.delete(key);
+        case 5 -> tree.insertAll(new int[] {key, key + 1, key + 7});
+        case 6 -> tree.deleteAll(new int[] {key, key + 3});
+        default -> {
+          RedBlackTree other = new RedBlackTree();
+          other.insertAll(new int[] {key, key + 100, key + 200});
+          if (random.nextBoolean()) {
+            tree.union(other);
+          } else {
+            tree.split(key).union(other);
+          }
+        }
+      }
+      assertEquals(tree.stats().blackHeight(), tree.blackHeight(), "after round " + round);
+    }
+    tree.setStatsCaching(false);
+    assertEquals(tree.stats().blackHeight(), tree.blackHeight());
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static int[] shuffledKeys(int count, long seed) {
+    int[] keys = new int[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = count - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = keys[i];
+      keys[i] = keys[j];
+      keys[j] = swap;
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,75 @@
+//Tests for TreeSnapshot's shape check. A snapshot's checksum only proves the file wasn't damaged after it was
+//written, so these tests rewrite the checksum after breaking the shape to get past it.
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeSnapshotTest {
+
+  // Header bytes (magic, version, flags, key count) and the one byte each of the keys 0..KEYS-1 takes as a varint
+  private static final int KEYS = 100;
+  private static final int SHAPE_OFFSET = 10 + KEYS;
+
+  // Bit of a node's 3 shape bits that marks it black
+  private static final int BLACK_BIT = 4;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void savedShapeLoadsBack() throws IOException {
+    Path file = directory.resolve("tree.rbts");
+    TreeSnapshot.write(treeOfKeys(), file, true);
+    RedBlackTree loaded = TreeSnapshot.read(file);
+    assertEquals(KEYS, loaded.size());
+    assertTrue(loaded.isRedBlack());
+  }
+
+  @Test
+  public void shapeWithRedRootIsRejected() throws IOException {
+    Path file = directory.resolve("tree.rbts");
+    TreeSnapshot.write(treeOfKeys(), file, true);
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[SHAPE_OFFSET] ^= BLACK_BIT;
+    writeWithChecksum(file, bytes);
+    assertThrows(IOException.class, () -> TreeSnapshot.read(file));
+  }
+
+  @Test
+  public void shapeWithUnequalBlackHeightsIsRejected() throws IOException {
+    Path file = directory.resolve("tree.rbts");
+    TreeSnapshot.write(treeOfKeys(), file, true);
+    byte[] bytes = Files.readAllBytes(file);
+    // The root's left child is the second node in pre-order; flipping only its color changes the black height of
+    // the paths through it and nothing else
+    bytes[SHAPE_OFFSET] ^= BLACK_BIT << 3;
+    writeWithChecksum(file, bytes);
+    assertThrows(IOException.class, () -> TreeSnapshot.read(file));
+  }
+
+  private static RedBlackTree treeOfKeys() {
+    RedBlackTree tree = new RedBlackTree();
+    for (int key = 0; key < KEYS; key++) {
+      tree.insert(key);
+    }
+    return tree;
+  }
+
+  // Replaces the trailing CRC32 with one that matches the (altered) bytes before it
+  private static void writeWithChecksum(Path file, byte[] bytes) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 4);
+    ByteBuffer.wrap(bytes).putInt(bytes.length - 4, (int) crc.getValue());
+    Files.write(file, bytes);
+  }
+}